@@ -0,0 +1,24 @@
+package com.cavetale.trees.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks with the GC profiler always enabled, so
+ * allocation rates per operation show up next to the timings.
+ * Accepts the usual JMH command line options.
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() { }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
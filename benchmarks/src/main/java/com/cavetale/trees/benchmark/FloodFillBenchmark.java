@@ -0,0 +1,68 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.trees.FloodFill;
+import com.cavetale.trees.GreedyBoxes;
+import com.cavetale.trees.util.PackedBlockPos;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The /trees auto scan: flood fill, bad block search and merging
+ * of the bad blocks into outline boxes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FloodFillBenchmark {
+    @Param({"BUSH", "SMALL", "LARGE", "GIANT"})
+    private SyntheticTree.Size size;
+    private SyntheticTree tree;
+    private FloodFill.Volume volume;
+    private long[] badBlocks;
+
+    @Setup
+    public void setup() {
+        tree = new SyntheticTree(size);
+        volume = tree.toVolume();
+        // Stray blocks scattered across the bounding box
+        final Random random = new Random(size.ordinal());
+        badBlocks = new long[tree.sx * tree.sy * tree.sz / 20];
+        for (int i = 0; i < badBlocks.length; i += 1) {
+            badBlocks[i] = PackedBlockPos.pack(random.nextInt(tree.sx), random.nextInt(tree.sy), random.nextInt(tree.sz));
+        }
+    }
+
+    @Benchmark
+    public FloodFill fill() {
+        final FloodFill floodFill = new FloodFill(volume, 16384);
+        floodFill.run(tree.saplingX, tree.saplingY, tree.saplingZ);
+        return floodFill;
+    }
+
+    @Benchmark
+    public long[] fillAndFindBadBlocks() {
+        final FloodFill floodFill = new FloodFill(volume, 16384);
+        floodFill.run(tree.saplingX, tree.saplingY, tree.saplingZ);
+        return floodFill.findBadBlocks();
+    }
+
+    @Benchmark
+    public List<GreedyBoxes.Box> mergeBadBlocks() {
+        return GreedyBoxes.merge(badBlocks);
+    }
+}
@@ -0,0 +1,146 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import com.cavetale.trees.GrowthEffects;
+import com.cavetale.trees.GrowthMetrics;
+import com.cavetale.trees.GrowthScheduler;
+import com.cavetale.trees.PlantingAdmission;
+import com.cavetale.trees.PlantingContext;
+import com.cavetale.trees.TreeBlocksGrowEvent;
+import com.cavetale.trees.TreeStructure;
+import com.cavetale.trees.util.LongHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.bukkit.Chunk;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.bukkit.entity.Player;
+
+/**
+ * The PlantingContext of PlantingLoad, with the real growth services
+ * and fakes for the rest.  Async tasks run on a thread pool.  Main
+ * thread tasks wait in a queue until the next tick.  Build
+ * permission is denied in chosen chunks.
+ */
+public final class LoadContext implements PlantingContext {
+    private final Logger logger = Logger.getLogger("PlantingLoad");
+    private final GrowthScheduler growthScheduler = new GrowthScheduler(logger);
+    private final GrowthEffects growthEffects = new GrowthEffects();
+    private final GrowthMetrics growthMetrics = new GrowthMetrics();
+    private final PlantingAdmission plantingAdmission = new PlantingAdmission(this, () -> false);
+    private final ExecutorService asyncExecutor;
+    private final Queue<Runnable> syncQueue = new ConcurrentLinkedQueue<>();
+    private final LongHashSet deniedChunks = new LongHashSet();
+    private final int previewMaxDisplays;
+    /** The structures offered to the next planting. */
+    private List<TreeStructure> treeStructures = List.of();
+
+    public LoadContext(final Workload workload) {
+        this.asyncExecutor = Executors.newFixedThreadPool(Math.max(1, workload.asyncThreads()));
+        this.previewMaxDisplays = workload.maxPreviewDisplays();
+        growthScheduler.setTickBudgetNanos(workload.tickBudgetNanos());
+        growthScheduler.setWeightPerTurn(workload.weightPerTurn());
+        final MemoryConfiguration admissionConfig = new MemoryConfiguration();
+        admissionConfig.set("max-growing-per-world", workload.maxGrowingPerWorld());
+        admissionConfig.set("sprout-extension-ticks", workload.sproutExtensionTicks());
+        admissionConfig.set("max-active-per-player", 1);
+        plantingAdmission.load(admissionConfig);
+    }
+
+    @Override
+    public GrowthScheduler getGrowthScheduler() {
+        return growthScheduler;
+    }
+
+    @Override
+    public GrowthEffects getGrowthEffects() {
+        return growthEffects;
+    }
+
+    @Override
+    public GrowthMetrics getGrowthMetrics() {
+        return growthMetrics;
+    }
+
+    @Override
+    public PlantingAdmission getPlantingAdmission() {
+        return plantingAdmission;
+    }
+
+    @Override
+    public TreeBlocksGrowEvent.Mode getBlockEventMode() {
+        return TreeBlocksGrowEvent.Mode.BULK;
+    }
+
+    @Override
+    public int getPreviewMaxDisplays() {
+        return previewMaxDisplays;
+    }
+
+    public void setTreeStructures(List<TreeStructure> treeStructures) {
+        this.treeStructures = treeStructures;
+    }
+
+    @Override
+    public List<TreeStructure> findTreeStructures(CustomTreeType type) {
+        return treeStructures;
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public void denyChunk(int x, int z) {
+        deniedChunks.add(Chunk.getChunkKey(x >> 4, z >> 4));
+    }
+
+    @Override
+    public boolean canBuild(Player player, Block block) {
+        return !deniedChunks.contains(Chunk.getChunkKey(block.getX() >> 4, block.getZ() >> 4));
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        asyncExecutor.execute(task);
+    }
+
+    @Override
+    public void runSync(Runnable task) {
+        syncQueue.add(task);
+    }
+
+    /**
+     * Run one server tick: the main thread tasks queued until now,
+     * then the growth, like TreesPlugin.
+     * @return the nanoseconds spent in growth
+     */
+    public long tick() {
+        for (Runnable task = syncQueue.poll(); task != null; task = syncQueue.poll()) {
+            task.run();
+        }
+        final boolean busy = growthScheduler.size() > 0;
+        final long start = System.nanoTime();
+        growthScheduler.tick();
+        growthEffects.flush();
+        final long nanos = System.nanoTime() - start;
+        if (busy) {
+            growthMetrics.record(GrowthMetrics.Timer.GROW_TICK, growthScheduler.getLastTickNanos());
+        }
+        return nanos;
+    }
+
+    public boolean hasPendingTasks() {
+        return !syncQueue.isEmpty();
+    }
+
+    public void shutdown() throws InterruptedException {
+        asyncExecutor.shutdown();
+        asyncExecutor.awaitTermination(1L, TimeUnit.MINUTES);
+    }
+}
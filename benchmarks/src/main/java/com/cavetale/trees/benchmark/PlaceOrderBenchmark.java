@@ -0,0 +1,41 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.trees.PlaceOrder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The placement order search run for every structure on load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceOrderBenchmark {
+    @Param({"BUSH", "SMALL", "LARGE", "GIANT"})
+    private SyntheticTree.Size size;
+    private SyntheticTree tree;
+
+    @Setup
+    public void setup() {
+        tree = new SyntheticTree(size);
+    }
+
+    @Benchmark
+    public int[] compute() {
+        return PlaceOrder.compute(tree.sx, tree.sy, tree.sz, tree.kinds,
+                                  tree.saplingX, tree.saplingY, tree.saplingZ, 0L);
+    }
+}
@@ -0,0 +1,272 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.core.struct.Vec3i;
+import com.cavetale.trees.GrowthMetrics;
+import com.cavetale.trees.GrowthScheduler;
+import com.cavetale.trees.PlantingAdmission;
+import com.cavetale.trees.SeedPlantTask;
+import com.cavetale.trees.TreeStructure;
+import com.cavetale.trees.TreeVariant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import org.bukkit.GameRule;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+import org.mockbukkit.mockbukkit.world.WorldMock;
+
+/**
+ * Headless load test of many concurrent plantings.  Replays a
+ * Workload through the real SeedPlantTask, GrowthScheduler,
+ * PlantingAdmission, GrowthEffects and GrowthMetrics, against a
+ * MockBukkit server.  The LoadContext fakes the scheduler and the
+ * build permission.  Each planting has its own player, as
+ * admission allows one planting per player.  Prints tick cost
+ * percentiles, blocks placed per tick, preview display counts, the
+ * outcome of all plantings and the growth metrics.
+ *
+ * MockBukkit is not the real server, so block access costs differ.
+ * Compare runs with each other, not with production.
+ *
+ * Usage: java -cp target/benchmarks.jar com.cavetale.trees.benchmark.PlantingLoad [key=value...]
+ * See Workload for the keys.
+ */
+public final class PlantingLoad {
+    private static final int Y = 80;
+    private final Workload workload;
+    private final LoadContext context;
+    private ServerMock server;
+    private WorldMock world;
+    private final Map<SyntheticTree.Size, TreeStructure> treeStructures = new EnumMap<>(SyntheticTree.Size.class);
+    private final List<Planting> plantings = new ArrayList<>();
+
+    /**
+     * One planting of the workload, until and after its task exists.
+     */
+    private static final class Planting {
+        final SyntheticTree.Size size;
+        final Vec3i sapling;
+        /** Applied once the task starts growing, or null. */
+        Consumer<SeedPlantTask> disturbance;
+        PlantingAdmission.Result admission;
+        SeedPlantTask task;
+
+        Planting(final SyntheticTree.Size size, final Vec3i sapling) {
+            this.size = size;
+            this.sapling = sapling;
+        }
+    }
+
+    public PlantingLoad(final Workload workload) {
+        this.workload = workload;
+        this.context = new LoadContext(workload);
+    }
+
+    private TreeStructure createTreeStructure(SyntheticTree.Size size) {
+        final SyntheticTree tree = new SyntheticTree(size);
+        final int[] placeBlocks = tree.getPlaceBlocks();
+        final short[] paletteIndex = tree.getPaletteIndexes(tree.getOffsets());
+        final BlockData[] palette = {
+            Material.OAK_LOG.createBlockData(),
+            Material.OAK_LEAVES.createBlockData(),
+        };
+        return new TreeStructure(workload.type(), size.name().toLowerCase(),
+                                 new Vec3i(tree.sx, tree.sy, tree.sz),
+                                 new Vec3i(tree.saplingX, tree.saplingY, tree.saplingZ),
+                                 palette, placeBlocks, paletteIndex);
+    }
+
+    private void createPlantings() {
+        final Random random = new Random(workload.seed());
+        final int columns = (int) Math.ceil(Math.sqrt(workload.plantings()));
+        for (int i = 0; i < workload.plantings(); i += 1) {
+            final SyntheticTree.Size size = workload.sizes().get(i % workload.sizes().size());
+            treeStructures.computeIfAbsent(size, this::createTreeStructure);
+            final int x = (i % columns) * workload.spacing();
+            final int z = (i / columns) * workload.spacing();
+            final Planting planting = new Planting(size, new Vec3i(x, Y, z));
+            plantings.add(planting);
+            final int radius = size.canopyRadius + 1;
+            for (int cz = (z - radius) >> 4; cz <= (z + radius) >> 4; cz += 1) {
+                for (int cx = (x - radius) >> 4; cx <= (x + radius) >> 4; cx += 1) {
+                    world.loadChunk(cx, cz);
+                }
+            }
+            if (random.nextDouble() < workload.deniedRate()) {
+                // A claim which covers part of the tree
+                context.denyChunk(x + random.nextInt(2 * radius + 1) - radius,
+                                  z + random.nextInt(2 * radius + 1) - radius);
+            }
+            // Pick a block in the second half of the tree for disturbances
+            final double fraction = 0.5 + 0.5 * random.nextDouble();
+            final double roll = random.nextDouble();
+            if (roll < workload.obstructedRate()) {
+                planting.disturbance = task -> {
+                    final int index = target(task.getVariant(), fraction);
+                    task.toWorldBlock(index).setType(Material.STONE);
+                };
+            } else if (roll < workload.obstructedRate() + workload.unloadedRate()) {
+                planting.disturbance = task -> {
+                    final int index = target(task.getVariant(), fraction);
+                    final int bx = task.getSapling().x + task.getVariant().getOffsetX(index);
+                    final int bz = task.getSapling().z + task.getVariant().getOffsetZ(index);
+                    world.unloadChunk(bx >> 4, bz >> 4);
+                };
+            }
+        }
+    }
+
+    private static int target(TreeVariant variant, double fraction) {
+        return Math.min(variant.getBlockCount() - 1, (int) (fraction * variant.getBlockCount()));
+    }
+
+    /**
+     * Plant like TreesPlugin does on a right click, after asking the
+     * admission.
+     */
+    private void plant(Planting planting) {
+        final PlayerMock player = server.addPlayer();
+        player.teleport(planting.sapling.toCenterLocation(world));
+        planting.admission = context.getPlantingAdmission().admit(player);
+        if (planting.admission == PlantingAdmission.Result.REFUSE_PLAYER
+            || planting.admission == PlantingAdmission.Result.REFUSE_FULL) {
+            return;
+        }
+        context.setTreeStructures(List.of(treeStructures.get(planting.size)));
+        planting.task = new SeedPlantTask(context, player, workload.type(), world, planting.sapling);
+        planting.task.start();
+        if (planting.admission == PlantingAdmission.Result.QUEUE) {
+            planting.task.delaySprout(context.getPlantingAdmission().getSproutExtensionTicks());
+        }
+    }
+
+    public void run() throws InterruptedException {
+        server = MockBukkit.mock();
+        try {
+            world = server.addSimpleWorld("load");
+            world.setGameRule(GameRule.DO_TILE_DROPS, false);
+            createPlantings();
+            runTicks();
+        } finally {
+            context.shutdown();
+            MockBukkit.unmock();
+        }
+    }
+
+    private void runTicks() {
+        final GrowthScheduler scheduler = context.getGrowthScheduler();
+        final GrowthMetrics metrics = context.getGrowthMetrics();
+        final int maxTicks = workload.maxTicks();
+        final long[] tickNanos = new long[maxTicks];
+        final int[] tickBlocks = new int[maxTicks];
+        final int[] tickPreviews = new int[maxTicks];
+        int maxDeferred = 0;
+        int next = 0;
+        int ticks = 0;
+        for (; ticks < maxTicks; ticks += 1) {
+            while (next < plantings.size() && plantingTick(next) <= ticks) {
+                plant(plantings.get(next));
+                next += 1;
+            }
+            if (next >= plantings.size() && scheduler.size() == 0 && !context.hasPendingTasks()) break;
+            int previews = 0;
+            for (int i = 0; i < next; i += 1) {
+                final Planting planting = plantings.get(i);
+                if (planting.task == null || planting.task.isStopped()) continue;
+                previews += planting.task.getBlockDisplayList().size();
+                if (planting.disturbance != null && planting.task.isGrowing()) {
+                    planting.disturbance.accept(planting.task);
+                    planting.disturbance = null;
+                }
+            }
+            final long blocksBefore = metrics.getTotal(GrowthMetrics.Counter.BLOCKS_PLACED);
+            tickNanos[ticks] = context.tick();
+            tickBlocks[ticks] = (int) (metrics.getTotal(GrowthMetrics.Counter.BLOCKS_PLACED) - blocksBefore);
+            tickPreviews[ticks] = previews;
+            maxDeferred = Math.max(maxDeferred, scheduler.getDeferredTurns());
+        }
+        report(Arrays.copyOf(tickNanos, ticks), Arrays.copyOf(tickBlocks, ticks),
+               Arrays.copyOf(tickPreviews, ticks), maxDeferred);
+    }
+
+    private int plantingTick(int index) {
+        if (workload.plantingTicks() <= 0) return 0;
+        return (int) ((long) index * workload.plantingTicks() / workload.plantings());
+    }
+
+    private void report(long[] tickNanos, int[] tickBlocks, int[] tickPreviews, int maxDeferred) {
+        final int ticks = tickNanos.length;
+        System.out.println("Workload: " + workload);
+        System.out.println("Ticks run: " + ticks
+                           + (ticks >= workload.maxTicks() ? " (max-ticks reached)" : ""));
+        final Map<PlantingAdmission.Result, Integer> admissions = new EnumMap<>(PlantingAdmission.Result.class);
+        final Map<SeedPlantTask.State, Integer> states = new EnumMap<>(SeedPlantTask.State.class);
+        for (Planting planting : plantings) {
+            if (planting.admission != null) admissions.merge(planting.admission, 1, Integer::sum);
+            if (planting.task != null) states.merge(planting.task.getState(), 1, Integer::sum);
+        }
+        System.out.println("Admission: " + admissions);
+        System.out.println("Final states: " + states);
+        for (String line : context.getGrowthMetrics().report(0)) {
+            System.out.println("Metrics: " + line);
+        }
+        if (ticks == 0) return;
+        final long[] sortedNanos = tickNanos.clone();
+        Arrays.sort(sortedNanos);
+        int overBudget = 0;
+        for (long it : tickNanos) {
+            if (it > workload.tickBudgetNanos()) overBudget += 1;
+        }
+        System.out.println(String.format("Tick cost ms: p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f over-budget=%d",
+                                         millis(percentile(sortedNanos, 0.50)),
+                                         millis(percentile(sortedNanos, 0.90)),
+                                         millis(percentile(sortedNanos, 0.99)),
+                                         millis(percentile(sortedNanos, 0.999)),
+                                         millis(sortedNanos[ticks - 1]),
+                                         overBudget));
+        final long[] sortedBlocks = new long[ticks];
+        long totalBlocks = 0L;
+        int growthTicks = 0;
+        for (int i = 0; i < ticks; i += 1) {
+            sortedBlocks[i] = tickBlocks[i];
+            totalBlocks += tickBlocks[i];
+            if (tickBlocks[i] > 0) growthTicks += 1;
+        }
+        Arrays.sort(sortedBlocks);
+        System.out.println(String.format("Blocks per tick: mean=%.1f p50=%d p99=%d max=%d growth-ticks=%d max-deferred-turns=%d",
+                                         (double) totalBlocks / ticks,
+                                         percentile(sortedBlocks, 0.50),
+                                         percentile(sortedBlocks, 0.99),
+                                         sortedBlocks[ticks - 1],
+                                         growthTicks,
+                                         maxDeferred));
+        long totalPreviews = 0L;
+        int maxPreviews = 0;
+        for (int it : tickPreviews) {
+            totalPreviews += it;
+            maxPreviews = Math.max(maxPreviews, it);
+        }
+        System.out.println(String.format("Preview displays: mean=%.1f max=%d",
+                                         (double) totalPreviews / ticks, maxPreviews));
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        final int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static double millis(long nanos) {
+        return (double) nanos / 1_000_000.0;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        new PlantingLoad(Workload.parse(args)).run();
+    }
+}
@@ -0,0 +1,45 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.trees.PreviewModel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The downsampled sapling preview, built once per tree variant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreviewModelBenchmark {
+    @Param({"BUSH", "SMALL", "LARGE", "GIANT"})
+    private SyntheticTree.Size size;
+    @Param({"64"})
+    private int maxBoxes;
+    private int[] offsets;
+    private short[] palette;
+
+    @Setup
+    public void setup() {
+        final SyntheticTree tree = new SyntheticTree(size);
+        offsets = tree.getOffsets();
+        palette = tree.getPaletteIndexes(offsets);
+    }
+
+    @Benchmark
+    public PreviewModel build() {
+        return PreviewModel.build(offsets, palette, maxBoxes);
+    }
+}
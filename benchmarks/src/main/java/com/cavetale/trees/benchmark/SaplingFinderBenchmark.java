@@ -0,0 +1,53 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.core.struct.Vec3i;
+import com.cavetale.trees.PlaceOrder;
+import com.cavetale.trees.SaplingFinder;
+import com.cavetale.trees.util.PackedVector;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The sapling detection of preprocess, run when a structure is
+ * saved, on the ground layer of a synthetic tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaplingFinderBenchmark {
+    @Param({"BUSH", "SMALL", "LARGE", "GIANT"})
+    private SyntheticTree.Size size;
+    private int[] ground;
+
+    @Setup
+    public void setup() {
+        final SyntheticTree tree = new SyntheticTree(size);
+        ground = new int[tree.sx * tree.sz];
+        int count = 0;
+        for (int z = 0; z < tree.sz; z += 1) {
+            for (int x = 0; x < tree.sx; x += 1) {
+                if (tree.get(x, 0, z) == PlaceOrder.BLOCKED) ground[count++] = PackedVector.pack(x, 0, z);
+            }
+        }
+        ground = Arrays.copyOf(ground, count);
+    }
+
+    @Benchmark
+    public Vec3i find() {
+        return SaplingFinder.find(ground, ground.length);
+    }
+}
@@ -0,0 +1,151 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.trees.FloodFill;
+import com.cavetale.trees.PlaceOrder;
+import com.cavetale.trees.util.PackedVector;
+import java.util.Random;
+
+/**
+ * A generated tree on a dense grid: a square trunk on a layer of
+ * ground, topped by a spherical canopy of leaves with random gaps.
+ * The same size always generates the same tree.
+ */
+public final class SyntheticTree {
+    public final int sx;
+    public final int sy;
+    public final int sz;
+    /** PlaceOrder kinds for each cell. */
+    public final byte[] kinds;
+    public final int saplingX;
+    public final int saplingY;
+    public final int saplingZ;
+
+    /**
+     * Tree sizes from a small bush to a giant of about 8000 blocks.
+     */
+    public enum Size {
+        BUSH(1, 2, 2),
+        SMALL(1, 5, 3),
+        LARGE(2, 14, 7),
+        GIANT(2, 30, 13);
+
+        public final int trunkWidth;
+        public final int trunkHeight;
+        public final int canopyRadius;
+
+        Size(final int trunkWidth, final int trunkHeight, final int canopyRadius) {
+            this.trunkWidth = trunkWidth;
+            this.trunkHeight = trunkHeight;
+            this.canopyRadius = canopyRadius;
+        }
+    }
+
+    public SyntheticTree(final Size size) {
+        final int r = size.canopyRadius;
+        this.sx = 2 * r + 3;
+        this.sz = 2 * r + 3;
+        this.sy = 1 + size.trunkHeight + r + 1;
+        this.kinds = new byte[sx * sy * sz];
+        this.saplingX = sx / 2;
+        this.saplingY = 1;
+        this.saplingZ = sz / 2;
+        final Random random = new Random(size.ordinal());
+        for (int z = 0; z < sz; z += 1) {
+            for (int x = 0; x < sx; x += 1) {
+                set(x, 0, z, PlaceOrder.BLOCKED);
+            }
+        }
+        final int cy = 1 + size.trunkHeight;
+        for (int y = cy - r; y <= cy + r; y += 1) {
+            for (int z = saplingZ - r; z <= saplingZ + r; z += 1) {
+                for (int x = saplingX - r; x <= saplingX + r; x += 1) {
+                    final int dx = x - saplingX;
+                    final int dy = y - cy;
+                    final int dz = z - saplingZ;
+                    if (y < 1 || dx * dx + dy * dy + dz * dz > r * r) continue;
+                    if (random.nextInt(5) == 0) continue;
+                    set(x, y, z, PlaceOrder.LAST);
+                }
+            }
+        }
+        for (int y = 1; y <= size.trunkHeight + r / 2; y += 1) {
+            for (int z = 0; z < size.trunkWidth; z += 1) {
+                for (int x = 0; x < size.trunkWidth; x += 1) {
+                    set(saplingX + x, y, saplingZ + z, PlaceOrder.FIRST);
+                }
+            }
+        }
+    }
+
+    private void set(int x, int y, int z, byte kind) {
+        kinds[PlaceOrder.index(sx, sz, x, y, z)] = kind;
+    }
+
+    public byte get(int x, int y, int z) {
+        if (x < 0 || y < 0 || z < 0 || x >= sx || y >= sy || z >= sz) return PlaceOrder.NONE;
+        return kinds[PlaceOrder.index(sx, sz, x, y, z)];
+    }
+
+    /**
+     * The placement order as packed structure coordinates, like
+     * TreeStructure place blocks.
+     */
+    public int[] getPlaceBlocks() {
+        final int[] order = PlaceOrder.compute(sx, sy, sz, kinds, saplingX, saplingY, saplingZ, 0L);
+        final int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i += 1) {
+            final int cell = order[i];
+            result[i] = PackedVector.pack(cell % sx, cell / (sx * sz), (cell / sx) % sz);
+        }
+        return result;
+    }
+
+    /**
+     * The placement order as packed offsets relative to the
+     * sapling, like TreeVariant offsets.
+     */
+    public int[] getOffsets() {
+        final int[] result = getPlaceBlocks();
+        for (int i = 0; i < result.length; i += 1) {
+            final int packed = result[i];
+            result[i] = PackedVector.pack(PackedVector.x(packed) - saplingX,
+                                          PackedVector.y(packed) - saplingY,
+                                          PackedVector.z(packed) - saplingZ);
+        }
+        return result;
+    }
+
+    /**
+     * Palette indexes for getOffsets: 0 for logs, 1 for leaves.
+     */
+    public short[] getPaletteIndexes(int[] offsets) {
+        final short[] result = new short[offsets.length];
+        for (int i = 0; i < offsets.length; i += 1) {
+            final int packed = offsets[i];
+            final byte kind = get(PackedVector.x(packed) + saplingX,
+                                  PackedVector.y(packed) + saplingY,
+                                  PackedVector.z(packed) + saplingZ);
+            result[i] = (short) (kind == PlaceOrder.LAST ? 1 : 0);
+        }
+        return result;
+    }
+
+    /**
+     * The tree as a flood fill volume.  Everything outside the grid
+     * is available and empty.
+     */
+    public FloodFill.Volume toVolume() {
+        return new FloodFill.Volume() {
+            @Override
+            public boolean isAvailable(int x, int y, int z) {
+                return true;
+            }
+
+            @Override
+            public boolean isSolid(int x, int y, int z) {
+                final byte kind = get(x, y, z);
+                return kind == PlaceOrder.FIRST || kind == PlaceOrder.LAST;
+            }
+        };
+    }
+}
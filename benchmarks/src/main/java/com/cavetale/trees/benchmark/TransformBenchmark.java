@@ -0,0 +1,73 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.core.struct.Vec3i;
+import com.cavetale.trees.util.PackedVector;
+import com.cavetale.trees.util.Transform;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.Axis;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.structure.Mirror;
+import org.bukkit.block.structure.StructureRotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rotation of the vectors of a whole tree, and of the block faces
+ * and axes which make up rotated block data.  Rotating BlockData
+ * itself needs a running server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+    @Param({"SMALL", "GIANT"})
+    private SyntheticTree.Size size;
+    @Param({"CLOCKWISE_90", "CLOCKWISE_180"})
+    private StructureRotation rotation;
+    @Param({"NONE", "LEFT_RIGHT"})
+    private Mirror mirror;
+    private Vec3i[] vectors;
+
+    @Setup
+    public void setup() {
+        final int[] offsets = new SyntheticTree(size).getOffsets();
+        vectors = new Vec3i[offsets.length];
+        for (int i = 0; i < offsets.length; i += 1) {
+            vectors[i] = Vec3i.of(PackedVector.x(offsets[i]), PackedVector.y(offsets[i]), PackedVector.z(offsets[i]));
+        }
+    }
+
+    @Benchmark
+    public void rotateVectors(Blackhole blackhole) {
+        for (Vec3i vec : vectors) {
+            blackhole.consume(Transform.rotate(vec, rotation, mirror));
+        }
+    }
+
+    @Benchmark
+    public void rotateBlockFaces(Blackhole blackhole) {
+        for (BlockFace face : BlockFace.values()) {
+            blackhole.consume(Transform.rotate(face, rotation, mirror));
+        }
+    }
+
+    @Benchmark
+    public void rotateAxes(Blackhole blackhole) {
+        for (Axis axis : Axis.values()) {
+            blackhole.consume(Transform.rotate(axis, rotation));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.core.struct.Vec3i;
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import com.cavetale.trees.TreePackCache;
+import com.cavetale.trees.TreeStructure;
+import com.cavetale.trees.TreesPlugin;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing and loading a whole tree pack of synthetic structures.
+ * The cache format needs a server for the Minecraft version and
+ * the palette, which MockBukkit stands in for.  The palette is
+ * pooled up front, so block state parsing is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreePackCacheBenchmark {
+    @Param({"SMALL", "LARGE", "GIANT"})
+    private SyntheticTree.Size size;
+    @Param({"64"})
+    private int entries;
+    private File file;
+    private List<TreePackCache.Compiled> compiledList;
+
+    @Setup
+    public void setup() throws IOException {
+        MockBukkit.mock();
+        final SyntheticTree tree = new SyntheticTree(size);
+        final int[] placeBlocks = tree.getPlaceBlocks();
+        final short[] paletteIndex = tree.getPaletteIndexes(tree.getOffsets());
+        final BlockData[] palette = {
+            TreesPlugin.getBlockDataPool().intern(Material.OAK_LOG.createBlockData()),
+            TreesPlugin.getBlockDataPool().intern(Material.OAK_LEAVES.createBlockData()),
+        };
+        final CustomTreeType type = CustomTreeType.values()[0];
+        compiledList = new ArrayList<>();
+        for (int i = 0; i < entries; i += 1) {
+            final TreeStructure treeStructure = new TreeStructure(type, size.name().toLowerCase() + i,
+                                                                  new Vec3i(tree.sx, tree.sy, tree.sz),
+                                                                  new Vec3i(tree.saplingX, tree.saplingY, tree.saplingZ),
+                                                                  palette, placeBlocks, paletteIndex);
+            compiledList.add(new TreePackCache.Compiled(treeStructure, new TreePackCache.Stamp(0L, 0L, i)));
+        }
+        file = Files.createTempFile("trees", ".cache").toFile();
+        TreePackCache.write(file, compiledList);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        TreePackCache.write(file, compiledList);
+    }
+
+    /**
+     * Open the pack and decode every structure with its blocks, like
+     * a full load.
+     */
+    @Benchmark
+    public int loadAll() throws IOException {
+        final TreePackCache cache = TreePackCache.open(file);
+        int result = 0;
+        for (TreePackCache.Compiled it : compiledList) {
+            final TreeStructure treeStructure = it.treeStructure();
+            result += cache.decode(cache.get(treeStructure.getType(), treeStructure.getName())).getBlockCount();
+        }
+        return result;
+    }
+
+    /**
+     * Open the pack and decode only the metadata, like a lazy load.
+     */
+    @Benchmark
+    public int loadMetadata() throws IOException {
+        final TreePackCache cache = TreePackCache.open(file);
+        int result = 0;
+        for (TreePackCache.Compiled it : compiledList) {
+            final TreeStructure treeStructure = it.treeStructure();
+            result += cache.decodeMetadata(cache.get(treeStructure.getType(), treeStructure.getName())).getBlockCount();
+        }
+        return result;
+    }
+}
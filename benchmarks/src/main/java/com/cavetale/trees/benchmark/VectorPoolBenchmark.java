@@ -0,0 +1,48 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.trees.TreesPlugin;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Vector interning via TreesPlugin.vector, within the fixed table
+ * and in the fallback map, from several threads like the loader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class VectorPoolBenchmark {
+    @Benchmark
+    public void table(Blackhole blackhole) {
+        for (int y = -32; y < 32; y += 4) {
+            for (int z = -32; z < 32; z += 4) {
+                for (int x = -32; x < 32; x += 4) {
+                    blackhole.consume(TreesPlugin.vector(x, y, z));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void fallback(Blackhole blackhole) {
+        for (int z = 0; z < 32; z += 1) {
+            for (int x = 0; x < 32; x += 1) {
+                blackhole.consume(TreesPlugin.vector(x + 1000, 0, z + 1000));
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.cavetale.trees.benchmark;
+
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parameters of one PlantingLoad run, parsed from key=value
+ * arguments.  Rates are probabilities per planting.
+ * @param plantings the number of plantings
+ * @param plantingTicks the ticks over which plantings are spread,
+ *        0 plants everything at once
+ * @param type the tree type, which decides the sapling
+ * @param sizes the tree sizes, picked round robin
+ * @param spacing the distance between plantings in blocks
+ * @param maxGrowingPerWorld see admission.max-growing-per-world
+ * @param sproutExtensionTicks see admission.sprout-extension-ticks
+ * @param maxPreviewDisplays see preview.max-displays
+ * @param tickBudgetNanos see growth.tick-budget-nanos
+ * @param weightPerTurn see growth.weight-per-turn
+ * @param deniedRate the rate of plantings which overlap a chunk
+ *        where building is denied
+ * @param obstructedRate the rate of plantings which meet a block
+ *        placed in their way during growth
+ * @param unloadedRate the rate of plantings whose chunk unloads
+ *        during growth
+ * @param asyncThreads the threads running async tasks
+ * @param maxTicks the run stops after this many ticks
+ * @param seed the random seed of the workload.  Rotations and sprout
+ *        lengths are picked by SeedPlantTask and not seeded.
+ */
+public record Workload(int plantings,
+                       int plantingTicks,
+                       CustomTreeType type,
+                       List<SyntheticTree.Size> sizes,
+                       int spacing,
+                       int maxGrowingPerWorld,
+                       int sproutExtensionTicks,
+                       int maxPreviewDisplays,
+                       long tickBudgetNanos,
+                       int weightPerTurn,
+                       double deniedRate,
+                       double obstructedRate,
+                       double unloadedRate,
+                       int asyncThreads,
+                       int maxTicks,
+                       long seed) {
+    public static Workload parse(String[] args) {
+        int plantings = 200;
+        int plantingTicks = 0;
+        CustomTreeType type = CustomTreeType.values()[0];
+        List<SyntheticTree.Size> sizes = List.of(SyntheticTree.Size.values());
+        int spacing = 40;
+        int maxGrowingPerWorld = 8;
+        int sproutExtensionTicks = 40;
+        int maxPreviewDisplays = 64;
+        long tickBudgetNanos = 2_000_000L;
+        int weightPerTurn = 8;
+        double deniedRate = 0.05;
+        double obstructedRate = 0.05;
+        double unloadedRate = 0.02;
+        int asyncThreads = 2;
+        int maxTicks = 72_000;
+        long seed = 0L;
+        for (String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value: " + arg);
+            final String key = arg.substring(0, eq);
+            final String value = arg.substring(eq + 1);
+            switch (key) {
+            case "plantings": plantings = Integer.parseInt(value); break;
+            case "planting-ticks": plantingTicks = Integer.parseInt(value); break;
+            case "type": type = CustomTreeType.valueOf(value.toUpperCase()); break;
+            case "sizes": {
+                final List<SyntheticTree.Size> list = new ArrayList<>();
+                for (String it : value.split(",")) {
+                    list.add(SyntheticTree.Size.valueOf(it.toUpperCase()));
+                }
+                sizes = List.copyOf(list);
+                break;
+            }
+            case "spacing": spacing = Integer.parseInt(value); break;
+            case "max-growing-per-world": maxGrowingPerWorld = Integer.parseInt(value); break;
+            case "sprout-extension-ticks": sproutExtensionTicks = Integer.parseInt(value); break;
+            case "max-preview-displays": maxPreviewDisplays = Integer.parseInt(value); break;
+            case "tick-budget-nanos": tickBudgetNanos = Long.parseLong(value); break;
+            case "weight-per-turn": weightPerTurn = Integer.parseInt(value); break;
+            case "denied-rate": deniedRate = Double.parseDouble(value); break;
+            case "obstructed-rate": obstructedRate = Double.parseDouble(value); break;
+            case "unloaded-rate": unloadedRate = Double.parseDouble(value); break;
+            case "async-threads": asyncThreads = Integer.parseInt(value); break;
+            case "max-ticks": maxTicks = Integer.parseInt(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            default: throw new IllegalArgumentException("Unknown key: " + key);
+            }
+        }
+        return new Workload(plantings, plantingTicks, type, sizes, spacing, maxGrowingPerWorld,
+                            sproutExtensionTicks, maxPreviewDisplays, tickBudgetNanos, weightPerTurn,
+                            deniedRate, obstructedRate, unloadedRate, asyncThreads, maxTicks, seed);
+    }
+}
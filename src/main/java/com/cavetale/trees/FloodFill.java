@@ -0,0 +1,162 @@
+package com.cavetale.trees;
+
+import com.cavetale.trees.util.LongHashSet;
+import com.cavetale.trees.util.PackedBlockPos;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Find all non-empty blocks connected to a start block, including
+ * diagonal neighbours.  Positions are packed into longs, see
+ * PackedBlockPos.  Independent of the server so it can
+ * run asynchronously on chunk snapshots.
+ */
+@Getter
+public final class FloodFill {
+    private static final int[] NEIGHBOR_X = new int[26];
+    private static final int[] NEIGHBOR_Y = new int[26];
+    private static final int[] NEIGHBOR_Z = new int[26];
+    private final Volume volume;
+    private final int maxBlocks;
+    /** Called with the current block count every so many blocks. */
+    @Setter private IntConsumer progress;
+    @Setter private int progressInterval = 4096;
+    private final LongHashSet blocks;
+    private Status status;
+    private int ax;
+    private int ay;
+    private int az;
+    private int bx;
+    private int by;
+    private int bz;
+
+    static {
+        int index = 0;
+        for (int dy = -1; dy <= 1; dy += 1) {
+            for (int dz = -1; dz <= 1; dz += 1) {
+                for (int dx = -1; dx <= 1; dx += 1) {
+                    if (dx == 0 && dy == 0 && dz == 0) continue;
+                    NEIGHBOR_X[index] = dx;
+                    NEIGHBOR_Y[index] = dy;
+                    NEIGHBOR_Z[index] = dz;
+                    index += 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * The world as seen by the flood fill.
+     */
+    public interface Volume {
+        /**
+         * Is the block known, e.g. its chunk is in range?  Blocks
+         * outside the world height count as available and empty.
+         */
+        boolean isAvailable(int x, int y, int z);
+
+        boolean isSolid(int x, int y, int z);
+    }
+
+    public enum Status {
+        COMPLETE,
+        TOO_LARGE,
+        OUT_OF_RANGE;
+    }
+
+    public FloodFill(final Volume volume, final int maxBlocks) {
+        this.volume = volume;
+        this.maxBlocks = maxBlocks;
+        this.blocks = new LongHashSet(Math.min(maxBlocks, 1 << 16));
+    }
+
+    /**
+     * Fill from the start block, which is always included.
+     * @return the status, also available via getStatus
+     */
+    public Status run(int x, int y, int z) {
+        blocks.clear();
+        ax = x;
+        ay = y;
+        az = z;
+        bx = x;
+        by = y;
+        bz = z;
+        long[] queue = new long[256];
+        int head = 0;
+        int tail = 0;
+        blocks.add(PackedBlockPos.pack(x, y, z));
+        queue[tail++] = PackedBlockPos.pack(x, y, z);
+        int nextProgress = progressInterval;
+        while (head < tail) {
+            final long packed = queue[head++];
+            final int px = PackedBlockPos.x(packed);
+            final int py = PackedBlockPos.y(packed);
+            final int pz = PackedBlockPos.z(packed);
+            for (int i = 0; i < 26; i += 1) {
+                final int nx = px + NEIGHBOR_X[i];
+                final int ny = py + NEIGHBOR_Y[i];
+                final int nz = pz + NEIGHBOR_Z[i];
+                final long nbor = PackedBlockPos.pack(nx, ny, nz);
+                if (blocks.contains(nbor)) continue;
+                if (!volume.isAvailable(nx, ny, nz)) {
+                    status = Status.OUT_OF_RANGE;
+                    return status;
+                }
+                if (!volume.isSolid(nx, ny, nz)) continue;
+                if (blocks.size() >= maxBlocks) {
+                    status = Status.TOO_LARGE;
+                    return status;
+                }
+                blocks.add(nbor);
+                if (tail == queue.length) {
+                    if (head > 0) {
+                        System.arraycopy(queue, head, queue, 0, tail - head);
+                        tail -= head;
+                        head = 0;
+                    }
+                    if (tail == queue.length) queue = Arrays.copyOf(queue, queue.length * 2);
+                }
+                queue[tail++] = nbor;
+                if (nx < ax) ax = nx;
+                if (ny < ay) ay = ny;
+                if (nz < az) az = nz;
+                if (nx > bx) bx = nx;
+                if (ny > by) by = ny;
+                if (nz > bz) bz = nz;
+            }
+            if (progress != null && blocks.size() >= nextProgress) {
+                progress.accept(blocks.size());
+                nextProgress = blocks.size() + progressInterval;
+            }
+        }
+        status = Status.COMPLETE;
+        return status;
+    }
+
+    /**
+     * Find the solid blocks within the bounding box which are not
+     * connected to the tree.
+     */
+    public long[] findBadBlocks() {
+        long[] result = new long[16];
+        int count = 0;
+        for (int y = ay; y <= by; y += 1) {
+            for (int z = az; z <= bz; z += 1) {
+                for (int x = ax; x <= bx; x += 1) {
+                    final long packed = PackedBlockPos.pack(x, y, z);
+                    if (blocks.contains(packed) || !volume.isSolid(x, y, z)) continue;
+                    if (count == result.length) result = Arrays.copyOf(result, count * 2);
+                    result[count++] = packed;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+}
@@ -0,0 +1,96 @@
+package com.cavetale.trees;
+
+import com.cavetale.trees.util.PackedBlockPos;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Merge a set of blocks into few axis aligned boxes by greedy
+ * meshing: each box grows along x, then z, then y, as long as all
+ * covered blocks are in the set and not yet covered.  Independent
+ * of the server.
+ */
+public final class GreedyBoxes {
+    private GreedyBoxes() { }
+
+    /**
+     * A box with inclusive corners.
+     */
+    public record Box(int ax, int ay, int az, int bx, int by, int bz) {
+        public int volume() {
+            return (bx - ax + 1) * (by - ay + 1) * (bz - az + 1);
+        }
+    }
+
+    /**
+     * Merge blocks packed by PackedBlockPos.  The result is sorted
+     * by volume, largest first.
+     */
+    public static List<Box> merge(long[] blocks) {
+        final List<Box> result = new ArrayList<>();
+        if (blocks.length == 0) return result;
+        int ax = Integer.MAX_VALUE;
+        int ay = Integer.MAX_VALUE;
+        int az = Integer.MAX_VALUE;
+        int bx = Integer.MIN_VALUE;
+        int by = Integer.MIN_VALUE;
+        int bz = Integer.MIN_VALUE;
+        for (long packed : blocks) {
+            final int x = PackedBlockPos.x(packed);
+            final int y = PackedBlockPos.y(packed);
+            final int z = PackedBlockPos.z(packed);
+            if (x < ax) ax = x;
+            if (y < ay) ay = y;
+            if (z < az) az = z;
+            if (x > bx) bx = x;
+            if (y > by) by = y;
+            if (z > bz) bz = z;
+        }
+        final int sx = bx - ax + 1;
+        final int sy = by - ay + 1;
+        final int sz = bz - az + 1;
+        // Cells still to be covered
+        final boolean[] open = new boolean[sx * sy * sz];
+        for (long packed : blocks) {
+            final int x = PackedBlockPos.x(packed) - ax;
+            final int y = PackedBlockPos.y(packed) - ay;
+            final int z = PackedBlockPos.z(packed) - az;
+            open[x + sx * (z + sz * y)] = true;
+        }
+        for (int y = 0; y < sy; y += 1) {
+            for (int z = 0; z < sz; z += 1) {
+                for (int x = 0; x < sx; x += 1) {
+                    if (!open[x + sx * (z + sz * y)]) continue;
+                    int x2 = x;
+                    while (x2 + 1 < sx && open[x2 + 1 + sx * (z + sz * y)]) x2 += 1;
+                    int z2 = z;
+                    while (z2 + 1 < sz && isOpen(open, sx, sz, x, x2, z2 + 1, z2 + 1, y, y)) z2 += 1;
+                    int y2 = y;
+                    while (y2 + 1 < sy && isOpen(open, sx, sz, x, x2, z, z2, y2 + 1, y2 + 1)) y2 += 1;
+                    for (int iy = y; iy <= y2; iy += 1) {
+                        for (int iz = z; iz <= z2; iz += 1) {
+                            for (int ix = x; ix <= x2; ix += 1) {
+                                open[ix + sx * (iz + sz * iy)] = false;
+                            }
+                        }
+                    }
+                    result.add(new Box(ax + x, ay + y, az + z, ax + x2, ay + y2, az + z2));
+                }
+            }
+        }
+        result.sort(Comparator.comparingInt(Box::volume).reversed());
+        return result;
+    }
+
+    private static boolean isOpen(boolean[] open, int sx, int sz, int x1, int x2, int z1, int z2, int y1, int y2) {
+        for (int y = y1; y <= y2; y += 1) {
+            for (int z = z1; z <= z2; z += 1) {
+                for (int x = x1; x <= x2; x += 1) {
+                    if (!open[x + sx * (z + sz * y)]) return false;
+                }
+            }
+        }
+        return true;
+    }
+}
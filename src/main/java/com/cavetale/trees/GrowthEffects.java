@@ -0,0 +1,176 @@
+package com.cavetale.trees;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.SoundCategory;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+/**
+ * Collect the sounds and particles of growing trees during one tick
+ * and emit them in aggregate.  Sounds of the same kind within the
+ * same chunk become one sound at their centroid, louder the more
+ * there were.  Each player hears at most a limited number of sounds
+ * per tick.  Particles of the same kind within the same chunk
+ * become one burst spread over their extent, and at most a limited
+ * number of bursts are spawned per tick.
+ */
+public final class GrowthEffects {
+    private static final double HEARING_DISTANCE = 32.0;
+    private final Map<Key, Aggregate> aggregates = new HashMap<>();
+    private final Map<UUID, Integer> playerCounts = new HashMap<>();
+    private final Map<ParticleKey, ParticleAggregate> particleAggregates = new HashMap<>();
+    @Getter @Setter private int maxSoundsPerPlayer = 4;
+    @Getter @Setter private int maxParticleBursts = 16;
+    @Getter @Setter private int maxParticlesPerBurst = 32;
+    @Getter private int lastSoundCount;
+    @Getter private int lastEmittedCount;
+    @Getter private int lastParticleCount;
+    @Getter private int lastBurstCount;
+
+    private record Key(UUID world, long chunk, Sound sound, float pitch) { }
+
+    private record ParticleKey(UUID world, long chunk, Particle particle, Object data) { }
+
+    private static final class ParticleAggregate {
+        final World world;
+        final Particle particle;
+        final Object data;
+        final double spread;
+        int count;
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        double maxZ = -Double.MAX_VALUE;
+
+        ParticleAggregate(final World world, final Particle particle, final Object data, final double spread) {
+            this.world = world;
+            this.particle = particle;
+            this.data = data;
+            this.spread = spread;
+        }
+    }
+
+    private static final class Aggregate {
+        final World world;
+        final Sound sound;
+        final float volume;
+        final float pitch;
+        int count;
+        double x;
+        double y;
+        double z;
+
+        Aggregate(final World world, final Sound sound, final float volume, final float pitch) {
+            this.world = world;
+            this.sound = sound;
+            this.volume = volume;
+            this.pitch = pitch;
+        }
+    }
+
+    /**
+     * Queue a block sound at the center of a block.
+     * @param volume the volume of a single sound
+     */
+    public void playSound(World world, int x, int y, int z, Sound sound, float volume, float pitch) {
+        final Key key = new Key(world.getUID(), Chunk.getChunkKey(x >> 4, z >> 4), sound, pitch);
+        Aggregate aggregate = aggregates.get(key);
+        if (aggregate == null) {
+            aggregate = new Aggregate(world, sound, volume, pitch);
+            aggregates.put(key, aggregate);
+        }
+        aggregate.count += 1;
+        aggregate.x += x + 0.5;
+        aggregate.y += y + 0.5;
+        aggregate.z += z + 0.5;
+    }
+
+    /**
+     * Queue particles at the center of a block.
+     * @param count the number of particles
+     * @param spread the offset of a single burst in each direction
+     * @param data the particle data, or null
+     */
+    public void spawnParticle(World world, int x, int y, int z, Particle particle, int count, double spread, Object data) {
+        final ParticleKey key = new ParticleKey(world.getUID(), Chunk.getChunkKey(x >> 4, z >> 4), particle, data);
+        ParticleAggregate aggregate = particleAggregates.get(key);
+        if (aggregate == null) {
+            aggregate = new ParticleAggregate(world, particle, data, spread);
+            particleAggregates.put(key, aggregate);
+        }
+        aggregate.count += count;
+        aggregate.minX = Math.min(aggregate.minX, x + 0.5);
+        aggregate.minY = Math.min(aggregate.minY, y + 0.5);
+        aggregate.minZ = Math.min(aggregate.minZ, z + 0.5);
+        aggregate.maxX = Math.max(aggregate.maxX, x + 0.5);
+        aggregate.maxY = Math.max(aggregate.maxY, y + 0.5);
+        aggregate.maxZ = Math.max(aggregate.maxZ, z + 0.5);
+    }
+
+    /**
+     * Emit everything collected in this tick.  Call once at the end
+     * of every tick.
+     */
+    public void flush() {
+        flushParticles();
+        flushSounds();
+    }
+
+    private void flushParticles() {
+        lastParticleCount = 0;
+        lastBurstCount = 0;
+        if (particleAggregates.isEmpty()) return;
+        for (ParticleAggregate aggregate : particleAggregates.values()) {
+            lastParticleCount += aggregate.count;
+            if (lastBurstCount >= maxParticleBursts) continue;
+            final Location location = new Location(aggregate.world,
+                                                   (aggregate.minX + aggregate.maxX) * 0.5,
+                                                   (aggregate.minY + aggregate.maxY) * 0.5,
+                                                   (aggregate.minZ + aggregate.maxZ) * 0.5);
+            aggregate.world.spawnParticle(aggregate.particle, location,
+                                          Math.min(aggregate.count, maxParticlesPerBurst),
+                                          aggregate.spread + (aggregate.maxX - aggregate.minX) * 0.5,
+                                          aggregate.spread + (aggregate.maxY - aggregate.minY) * 0.5,
+                                          aggregate.spread + (aggregate.maxZ - aggregate.minZ) * 0.5,
+                                          0.0, aggregate.data);
+            lastBurstCount += 1;
+        }
+        particleAggregates.clear();
+    }
+
+    private void flushSounds() {
+        lastSoundCount = 0;
+        lastEmittedCount = 0;
+        if (aggregates.isEmpty()) return;
+        final double maxDistanceSquared = HEARING_DISTANCE * HEARING_DISTANCE;
+        for (Aggregate aggregate : aggregates.values()) {
+            lastSoundCount += aggregate.count;
+            final Location location = new Location(aggregate.world,
+                                                   aggregate.x / aggregate.count,
+                                                   aggregate.y / aggregate.count,
+                                                   aggregate.z / aggregate.count);
+            // Each further sound adds a quarter, up to full volume
+            final float volume = Math.min(1.0f, aggregate.volume * (1.0f + 0.25f * (aggregate.count - 1)));
+            for (Player player : aggregate.world.getPlayers()) {
+                if (player.getLocation().distanceSquared(location) > maxDistanceSquared) continue;
+                final int count = playerCounts.getOrDefault(player.getUniqueId(), 0);
+                if (count >= maxSoundsPerPlayer) continue;
+                playerCounts.put(player.getUniqueId(), count + 1);
+                player.playSound(location, aggregate.sound, SoundCategory.BLOCKS, volume, aggregate.pitch);
+                lastEmittedCount += 1;
+            }
+        }
+        aggregates.clear();
+        playerCounts.clear();
+    }
+}
@@ -0,0 +1,190 @@
+package com.cavetale.trees;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms of plantings, kept in one second
+ * buckets for the last five minutes plus a running total.
+ * Histograms use power of two buckets, so percentiles are upper
+ * bounds within a factor of two.  Recording does not allocate.
+ * Main thread only.  Independent of the server.
+ */
+public final class GrowthMetrics {
+    public static final int WINDOW_SECONDS = 300;
+    private static final int HISTOGRAM_BUCKETS = 40;
+    private final LongSupplier clock;
+    private final Bucket[] buckets = new Bucket[WINDOW_SECONDS];
+    private final Bucket total = new Bucket();
+
+    public enum Counter {
+        PLANTED,
+        STARTED_GROWING,
+        DONE,
+        BLOCKS_PLACED,
+        DISPLAYS_SPAWNED;
+    }
+
+    public enum Timer {
+        /** Picking the structure and starting validation. */
+        INITIALIZE,
+        /** From validation start until the result is known. */
+        VALIDATION,
+        SPAWN_DISPLAYS,
+        /** One tick of the GrowthScheduler while tasks exist. */
+        GROW_TICK;
+    }
+
+    public enum Abort {
+        CANNOT_REPLACE,
+        CHUNK_UNLOADED,
+        PLAYER_OFFLINE,
+        SAPLING_BROKEN,
+        INVALID;
+    }
+
+    private static final class Bucket {
+        long second = Long.MIN_VALUE;
+        final long[] counters = new long[Counter.values().length];
+        final long[] aborts = new long[Abort.values().length];
+        final long[][] histograms = new long[Timer.values().length][HISTOGRAM_BUCKETS];
+        final long[] timerCount = new long[Timer.values().length];
+        final long[] timerSum = new long[Timer.values().length];
+        final long[] timerMax = new long[Timer.values().length];
+
+        void reset(long theSecond) {
+            second = theSecond;
+            Arrays.fill(counters, 0L);
+            Arrays.fill(aborts, 0L);
+            for (long[] it : histograms) Arrays.fill(it, 0L);
+            Arrays.fill(timerCount, 0L);
+            Arrays.fill(timerSum, 0L);
+            Arrays.fill(timerMax, 0L);
+        }
+
+        void add(Bucket other) {
+            for (int i = 0; i < counters.length; i += 1) counters[i] += other.counters[i];
+            for (int i = 0; i < aborts.length; i += 1) aborts[i] += other.aborts[i];
+            for (int i = 0; i < histograms.length; i += 1) {
+                for (int j = 0; j < HISTOGRAM_BUCKETS; j += 1) histograms[i][j] += other.histograms[i][j];
+                timerCount[i] += other.timerCount[i];
+                timerSum[i] += other.timerSum[i];
+                timerMax[i] = Math.max(timerMax[i], other.timerMax[i]);
+            }
+        }
+    }
+
+    /**
+     * @param clock the nanosecond clock
+     */
+    public GrowthMetrics(final LongSupplier clock) {
+        this.clock = clock;
+        for (int i = 0; i < WINDOW_SECONDS; i += 1) buckets[i] = new Bucket();
+    }
+
+    public GrowthMetrics() {
+        this(System::nanoTime);
+    }
+
+    private Bucket current() {
+        final long second = clock.getAsLong() / 1_000_000_000L;
+        final Bucket bucket = buckets[(int) Math.floorMod(second, (long) WINDOW_SECONDS)];
+        if (bucket.second != second) bucket.reset(second);
+        return bucket;
+    }
+
+    public void count(Counter counter) {
+        count(counter, 1);
+    }
+
+    public void count(Counter counter, int amount) {
+        current().counters[counter.ordinal()] += amount;
+        total.counters[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Get the running total of a counter.
+     */
+    public long getTotal(Counter counter) {
+        return total.counters[counter.ordinal()];
+    }
+
+    public void abort(Abort abort) {
+        current().aborts[abort.ordinal()] += 1;
+        total.aborts[abort.ordinal()] += 1;
+    }
+
+    public void record(Timer timer, long nanos) {
+        final int index = Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0L, nanos)));
+        record(current(), timer.ordinal(), index, nanos);
+        record(total, timer.ordinal(), index, nanos);
+    }
+
+    private static void record(Bucket bucket, int timer, int index, long nanos) {
+        bucket.histograms[timer][index] += 1;
+        bucket.timerCount[timer] += 1;
+        bucket.timerSum[timer] += nanos;
+        bucket.timerMax[timer] = Math.max(bucket.timerMax[timer], nanos);
+    }
+
+    /**
+     * Sum up the last seconds, or everything if seconds is 0.
+     */
+    private Bucket sum(int seconds) {
+        if (seconds <= 0) return total;
+        final long now = clock.getAsLong() / 1_000_000_000L;
+        final Bucket result = new Bucket();
+        for (Bucket bucket : buckets) {
+            if (bucket.second > now - seconds && bucket.second <= now) result.add(bucket);
+        }
+        return result;
+    }
+
+    /**
+     * Describe a window in a few lines.
+     * @param seconds the window length, 0 for the running total
+     */
+    public List<String> report(int seconds) {
+        final Bucket bucket = sum(seconds);
+        final List<String> result = new ArrayList<>();
+        final StringBuilder counters = new StringBuilder();
+        for (Counter it : Counter.values()) {
+            if (counters.length() > 0) counters.append(' ');
+            counters.append(it.name().toLowerCase()).append('=').append(bucket.counters[it.ordinal()]);
+        }
+        result.add(counters.toString());
+        final StringBuilder aborts = new StringBuilder("aborts:");
+        for (Abort it : Abort.values()) {
+            aborts.append(' ').append(it.name().toLowerCase()).append('=').append(bucket.aborts[it.ordinal()]);
+        }
+        result.add(aborts.toString());
+        for (Timer it : Timer.values()) {
+            final int i = it.ordinal();
+            final long count = bucket.timerCount[i];
+            if (count == 0) continue;
+            result.add(String.format("%s: n=%d mean=%.3fms p50<=%.3fms p99<=%.3fms max=%.3fms",
+                                     it.name().toLowerCase(), count,
+                                     millis(bucket.timerSum[i] / count),
+                                     millis(Math.min(bucket.timerMax[i], percentile(bucket.histograms[i], count, 0.50))),
+                                     millis(Math.min(bucket.timerMax[i], percentile(bucket.histograms[i], count, 0.99))),
+                                     millis(bucket.timerMax[i])));
+        }
+        return result;
+    }
+
+    private static long percentile(long[] histogram, long count, double fraction) {
+        final long rank = (long) Math.ceil(fraction * count);
+        long seen = 0L;
+        for (int i = 0; i < histogram.length; i += 1) {
+            seen += histogram[i];
+            if (seen >= rank) return 1L << i;
+        }
+        return 1L << (histogram.length - 1);
+    }
+
+    private static double millis(long nanos) {
+        return (double) nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,151 @@
+package com.cavetale.trees;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Central scheduler for all growing trees.  One timer calls tick()
+ * once per server tick.  Every active task gets its cheap per-tick
+ * update.  Growth work is then handed out in round robin turns
+ * until the tick budget is used up; tasks which did not get a turn
+ * are first in line on the next tick.  The first turn of each tick
+ * always runs so growth never stalls completely.  A task which
+ * throws is logged and stopped, so it cannot hold up the others.
+ */
+public final class GrowthScheduler {
+    /** Length of the cycle periodic effects are staggered across. */
+    public static final int PHASE_PERIOD = 12;
+    private final List<Growable> tasks = new ArrayList<>();
+    private final List<Growable> growing = new ArrayList<>();
+    private final Logger logger;
+    private final LongSupplier clock;
+    @Getter @Setter private long tickBudgetNanos = 2_000_000L;
+    @Getter @Setter private int weightPerTurn = 8;
+    private int cursor;
+    private int nextPhase;
+    /** Turns which did not fit into the budget in the last tick. */
+    @Getter private int deferredTurns;
+    @Getter private long lastTickNanos;
+
+    /**
+     * One planting as seen by the scheduler.
+     */
+    public interface Growable {
+        /**
+         * Advance the state machine by one tick.  Must be cheap.
+         */
+        void tick();
+
+        /**
+         * @return true if this task wants growth turns
+         */
+        boolean isGrowing();
+
+        /**
+         * Place blocks worth up to the given weight.
+         */
+        void grow(int weight);
+
+        /**
+         * @return true once the task is finished and can be removed
+         */
+        boolean isStopped();
+
+        void stop();
+    }
+
+    public GrowthScheduler(final Logger logger, final LongSupplier clock) {
+        this.logger = logger;
+        this.clock = clock;
+    }
+
+    public GrowthScheduler(final Logger logger) {
+        this(logger, System::nanoTime);
+    }
+
+    /**
+     * Add a task.
+     * @return the phase offset of the task within PHASE_PERIOD
+     */
+    public int add(Growable task) {
+        tasks.add(task);
+        final int phase = nextPhase;
+        // 5 is coprime to 12, so consecutive tasks spread evenly
+        nextPhase = (nextPhase + 5) % PHASE_PERIOD;
+        return phase;
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Get an unmodifiable view of all tasks.
+     */
+    public List<Growable> getTasks() {
+        return Collections.unmodifiableList(tasks);
+    }
+
+    public void stopAll() {
+        for (Growable task : List.copyOf(tasks)) {
+            task.stop();
+        }
+        tasks.clear();
+    }
+
+    public void tick() {
+        final long start = clock.getAsLong();
+        for (int i = 0; i < tasks.size(); i += 1) {
+            final Growable task = tasks.get(i);
+            if (task.isStopped()) continue;
+            try {
+                task.tick();
+            } catch (RuntimeException re) {
+                fail(task, "tick", re);
+            }
+        }
+        tasks.removeIf(Growable::isStopped);
+        growing.clear();
+        for (Growable task : tasks) {
+            if (task.isGrowing()) growing.add(task);
+        }
+        deferredTurns = 0;
+        final int count = growing.size();
+        if (count > 0) {
+            if (cursor >= count) cursor = 0;
+            int turns = 0;
+            for (; turns < count; turns += 1) {
+                if (turns > 0 && clock.getAsLong() - start >= tickBudgetNanos) break;
+                final Growable task = growing.get(cursor);
+                cursor = (cursor + 1) % count;
+                try {
+                    task.grow(weightPerTurn);
+                } catch (RuntimeException re) {
+                    fail(task, "grow", re);
+                }
+            }
+            deferredTurns = count - turns;
+            tasks.removeIf(Growable::isStopped);
+        }
+        lastTickNanos = clock.getAsLong() - start;
+    }
+
+    /**
+     * Log the exception of a task and stop it.  It will be removed
+     * along with the other stopped tasks.
+     */
+    private void fail(Growable task, String what, RuntimeException re) {
+        logger.log(Level.SEVERE, "Growable " + what + " failed: " + task, re);
+        try {
+            task.stop();
+        } catch (RuntimeException re2) {
+            logger.log(Level.SEVERE, "Growable stop failed: " + task, re2);
+        }
+    }
+}
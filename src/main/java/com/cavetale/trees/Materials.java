@@ -18,13 +18,13 @@ public final class Materials {
 
     /**
      * In addition to ground materials, ignored materials are not
-     * considered part of any tree within createPlaceBlockList().
+     * considered part of any tree by PlaceOrder.
      */
     public static final Set<Material> IGNORED;
 
     /**
      * Vine materials, in addition to leaves, are placed after any
-     * other block within createPlaceBlockList().
+     * other block by PlaceOrder.
      */
     public static final Set<Material> VINE = Set.of(Material.VINE,
                                                     Material.CAVE_VINES,
@@ -44,4 +44,12 @@ public final class Materials {
     }
 
     private Materials() { }
+
+    /**
+     * Foliage, meaning leaves and vines, is placed after all other
+     * blocks of a tree.
+     */
+    public static boolean isFoliage(Material material) {
+        return Tag.LEAVES.isTagged(material) || VINE.contains(material);
+    }
 }
@@ -0,0 +1,156 @@
+package com.cavetale.trees;
+
+import java.util.Arrays;
+
+/**
+ * Compute the order in which the blocks of a tree are placed: a
+ * breadth first search from the sapling over all 26 neighbours,
+ * logs first, then leaves.  Neighbours are visited in an order
+ * shuffled by a seeded generator, so the same seed always yields
+ * the same order.  Works on a dense grid of the structure's
+ * bounding box and is independent of the server.
+ */
+public final class PlaceOrder {
+    /** No block, or air. */
+    public static final byte NONE = 0;
+    /** Placed in the first pass, e.g. logs. */
+    public static final byte FIRST = 1;
+    /** Placed in the second pass, e.g. leaves and vines. */
+    public static final byte LAST = 2;
+    /** Present but not part of the tree, e.g. ground. */
+    public static final byte BLOCKED = 3;
+    /** Steps the start may move up to find a block. */
+    private static final int MAX_START_LIFT = 8;
+    private static final int[] NEIGHBOR_X = new int[26];
+    private static final int[] NEIGHBOR_Y = new int[26];
+    private static final int[] NEIGHBOR_Z = new int[26];
+
+    static {
+        int index = 0;
+        for (int y = -1; y <= 1; y += 1) {
+            for (int z = -1; z <= 1; z += 1) {
+                for (int x = -1; x <= 1; x += 1) {
+                    if (x == 0 && y == 0 && z == 0) continue;
+                    NEIGHBOR_X[index] = x;
+                    NEIGHBOR_Y[index] = y;
+                    NEIGHBOR_Z[index] = z;
+                    index += 1;
+                }
+            }
+        }
+    }
+
+    private PlaceOrder() { }
+
+    /**
+     * Grid index of a cell, x varying fastest, then z, then y.
+     */
+    public static int index(int sx, int sz, int x, int y, int z) {
+        return x + sx * (z + sz * y);
+    }
+
+    /**
+     * Derive a seed from the identity of a structure.  Only uses
+     * String.hashCode, which is stable across runs.
+     */
+    public static long seed(String type, String name) {
+        return mix(((long) type.hashCode() << 32) ^ (name.hashCode() & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Compute the placement order.  The search starts at the start
+     * cell, lifted until it finds a block, but at most 8 times.  If
+     * there is still no block there, the search spreads from its
+     * neighbours and the start itself is not part of the result.
+     * @param kinds one of NONE, FIRST, LAST, BLOCKED for each cell
+     * @return grid indexes in placement order
+     */
+    public static int[] compute(int sx, int sy, int sz, byte[] kinds, int startX, int startY, int startZ, long seed) {
+        // Mangrove trees are floaty!
+        for (int i = 0; i < MAX_START_LIFT && !isPresent(sx, sy, sz, kinds, startX, startY, startZ); i += 1) {
+            startY += 1;
+        }
+        final boolean startInside = isInside(sx, sy, sz, startX, startY, startZ);
+        final boolean[] done = new boolean[kinds.length];
+        int[] queue = new int[64];
+        int tail = 0;
+        if (startInside) {
+            final int start = index(sx, sz, startX, startY, startZ);
+            queue[tail++] = start;
+            done[start] = true;
+        }
+        final int[] permutation = new int[26];
+        for (int i = 0; i < 26; i += 1) permutation[i] = i;
+        long state = seed;
+        // Outside the grid, the start is a center but never queued
+        boolean startOutside = !startInside;
+        int head = 0;
+        while (startOutside || head < tail) {
+            final int cx;
+            final int cy;
+            final int cz;
+            if (startOutside) {
+                startOutside = false;
+                cx = startX;
+                cy = startY;
+                cz = startZ;
+            } else {
+                final int center = queue[head++];
+                cx = center % sx;
+                cz = (center / sx) % sz;
+                cy = center / (sx * sz);
+            }
+            // Fisher-Yates
+            for (int i = 25; i > 0; i -= 1) {
+                state += 0x9E3779B97F4A7C15L;
+                final int j = (int) ((mix(state) >>> 33) % (i + 1));
+                final int tmp = permutation[i];
+                permutation[i] = permutation[j];
+                permutation[j] = tmp;
+            }
+            for (int i = 0; i < 26; i += 1) {
+                final int face = permutation[i];
+                final int x = cx + NEIGHBOR_X[face];
+                final int y = cy + NEIGHBOR_Y[face];
+                final int z = cz + NEIGHBOR_Z[face];
+                if (!isInside(sx, sy, sz, x, y, z)) continue;
+                final int nbor = index(sx, sz, x, y, z);
+                if (done[nbor]) continue;
+                done[nbor] = true;
+                final byte kind = kinds[nbor];
+                if (kind != FIRST && kind != LAST) continue;
+                if (tail == queue.length) queue = Arrays.copyOf(queue, tail * 2);
+                queue[tail++] = nbor;
+            }
+        }
+        // Stable split: first pass, then last pass.  An empty start
+        // is left out.
+        final int[] result = new int[tail];
+        int count = 0;
+        for (int i = 0; i < tail; i += 1) {
+            final byte kind = kinds[queue[i]];
+            if (kind != LAST && kind != NONE) result[count++] = queue[i];
+        }
+        for (int i = 0; i < tail; i += 1) {
+            if (kinds[queue[i]] == LAST) result[count++] = queue[i];
+        }
+        return count == tail ? result : Arrays.copyOf(result, count);
+    }
+
+    private static boolean isInside(int sx, int sy, int sz, int x, int y, int z) {
+        return x >= 0 && y >= 0 && z >= 0 && x < sx && y < sy && z < sz;
+    }
+
+    private static boolean isPresent(int sx, int sy, int sz, byte[] kinds, int x, int y, int z) {
+        return isInside(sx, sy, sz, x, y, z) && kinds[index(sx, sz, x, y, z)] != NONE;
+    }
+
+    /**
+     * SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
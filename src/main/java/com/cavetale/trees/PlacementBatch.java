@@ -0,0 +1,69 @@
+package com.cavetale.trees;
+
+import java.util.Arrays;
+
+/**
+ * One tick worth of block placements, ordered by chunk and chunk
+ * section so they can be applied in one pass per section.  Blocks
+ * which are placed last, such as leaves, stay behind all others.
+ * Within a section the original order is kept.
+ *
+ * Each entry is encoded in a single sort key:
+ * last (1 bit), chunk x (22), chunk z (22), section y (8) and the
+ * position within the batch (10).
+ */
+final class PlacementBatch {
+    public static final int MAX_SIZE = 1 << 10;
+    private static final int CHUNK_OFFSET = 1 << 21;
+    private static final int SECTION_OFFSET = 1 << 7;
+    private long[] keys = new long[16];
+    private int[] indexes = new int[16];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size >= MAX_SIZE;
+    }
+
+    /**
+     * Add an entry.
+     * @param index the block index within the variant
+     * @param x the world x coordinate
+     * @param y the world y coordinate
+     * @param z the world z coordinate
+     * @param last true if the block must be placed after all others
+     */
+    public void add(int index, int x, int y, int z, boolean last) {
+        if (size >= MAX_SIZE) throw new IllegalStateException("Batch full");
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            indexes = Arrays.copyOf(indexes, size * 2);
+        }
+        keys[size] = ((last ? 1L : 0L) << 62)
+            | ((long) ((x >> 4) + CHUNK_OFFSET) << 40)
+            | ((long) ((z >> 4) + CHUNK_OFFSET) << 18)
+            | ((long) (((y >> 4) + SECTION_OFFSET) & 0xFF) << 10)
+            | (long) size;
+        indexes[size] = index;
+        size += 1;
+    }
+
+    public void sort() {
+        Arrays.sort(keys, 0, size);
+    }
+
+    /**
+     * Get the variant block index of the nth entry, in sorted
+     * order.
+     */
+    public int getIndex(int n) {
+        return indexes[(int) (keys[n] & (MAX_SIZE - 1))];
+    }
+}
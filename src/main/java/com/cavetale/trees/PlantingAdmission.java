@@ -0,0 +1,126 @@
+package com.cavetale.trees;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+/**
+ * Admission control for seed plantings.  Depending on server health
+ * and the number of active plantings, a new planting starts right
+ * away, is queued with a longer sprout phase, or is refused.  Queued
+ * plantings only start growing once the server is healthy and their
+ * world has a free growth slot.  A slot is taken when a planting is
+ * admitted to grow and given back when it stops.
+ */
+@Getter
+public final class PlantingAdmission {
+    private final PlantingContext context;
+    @Getter(AccessLevel.NONE) private final BooleanSupplier overloadCheck;
+    /** Plantings admitted to grow and not yet stopped, per world. */
+    @Getter(AccessLevel.NONE) private final Map<UUID, Integer> growingPerWorld = new HashMap<>();
+    private double maxMspt = 45.0;
+    private double minTps = 18.0;
+    private int maxGrowingPerWorld = 8;
+    private int maxActivePerPlayer = 1;
+    private int maxQueued = 32;
+    private int sproutExtensionTicks = 40;
+
+    public enum Result {
+        /** Start normally. */
+        ACCEPT,
+        /** Start with a lengthened sprout phase. */
+        QUEUE,
+        /** The player has too many active plantings. */
+        REFUSE_PLAYER,
+        /** The queue is full. */
+        REFUSE_FULL;
+    }
+
+    public PlantingAdmission(final PlantingContext context, final BooleanSupplier overloadCheck) {
+        this.context = context;
+        this.overloadCheck = overloadCheck;
+    }
+
+    public PlantingAdmission(final PlantingContext context) {
+        this.context = context;
+        this.overloadCheck = () -> Bukkit.getAverageTickTime() > maxMspt || Bukkit.getTPS()[0] < minTps;
+    }
+
+    public void load(ConfigurationSection config) {
+        if (config == null) return;
+        maxMspt = config.getDouble("max-mspt", maxMspt);
+        minTps = config.getDouble("min-tps", minTps);
+        maxGrowingPerWorld = config.getInt("max-growing-per-world", maxGrowingPerWorld);
+        maxActivePerPlayer = config.getInt("max-active-per-player", maxActivePerPlayer);
+        maxQueued = config.getInt("max-queued", maxQueued);
+        sproutExtensionTicks = config.getInt("sprout-extension-ticks", sproutExtensionTicks);
+    }
+
+    public boolean isOverloaded() {
+        return overloadCheck.getAsBoolean();
+    }
+
+    public Result admit(Player player) {
+        if (SeedPlantTask.TASK_INDEX.getPlayerTasks(player.getUniqueId()).size() >= maxActivePerPlayer) {
+            return Result.REFUSE_PLAYER;
+        }
+        if (isOverloaded()) {
+            int queuedCount = 0;
+            for (GrowthScheduler.Growable it : context.getGrowthScheduler().getTasks()) {
+                if (it instanceof SeedPlantTask task && !task.isStopped() && task.isQueued()) queuedCount += 1;
+            }
+            return queuedCount < maxQueued
+                ? Result.QUEUE
+                : Result.REFUSE_FULL;
+        }
+        return Result.ACCEPT;
+    }
+
+    /**
+     * Check if a planting which finished sprouting may start to grow
+     * now, and if so, take a growth slot in its world.  The caller
+     * must give the slot back with stopGrowing once it stops.
+     * @return true if a slot was taken
+     */
+    public boolean tryStartGrowing(UUID worldId) {
+        if (isOverloaded()) return false;
+        final int growingCount = getGrowingCount(worldId);
+        if (growingCount >= maxGrowingPerWorld) return false;
+        growingPerWorld.put(worldId, growingCount + 1);
+        return true;
+    }
+
+    public boolean tryStartGrowing(World world) {
+        return tryStartGrowing(world.getUID());
+    }
+
+    /**
+     * Give back a growth slot taken by tryStartGrowing.
+     */
+    public void stopGrowing(UUID worldId) {
+        final int growingCount = getGrowingCount(worldId);
+        if (growingCount <= 1) {
+            growingPerWorld.remove(worldId);
+        } else {
+            growingPerWorld.put(worldId, growingCount - 1);
+        }
+    }
+
+    public void stopGrowing(World world) {
+        stopGrowing(world.getUID());
+    }
+
+    /**
+     * Get the number of plantings admitted to grow in a world.
+     */
+    public int getGrowingCount(UUID worldId) {
+        return growingPerWorld.getOrDefault(worldId, 0);
+    }
+}
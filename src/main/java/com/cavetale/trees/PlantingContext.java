@@ -0,0 +1,48 @@
+package com.cavetale.trees;
+
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import java.util.List;
+import java.util.logging.Logger;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+
+/**
+ * Everything a SeedPlantTask needs besides its world: the shared
+ * growth services, build permission and the scheduler.  TreesPlugin
+ * is the real one.  The load harness in the benchmarks provides its
+ * own, so it can run the real planting state machine without a
+ * server.
+ */
+public interface PlantingContext {
+    GrowthScheduler getGrowthScheduler();
+
+    GrowthEffects getGrowthEffects();
+
+    GrowthMetrics getGrowthMetrics();
+
+    PlantingAdmission getPlantingAdmission();
+
+    TreeBlocksGrowEvent.Mode getBlockEventMode();
+
+    int getPreviewMaxDisplays();
+
+    List<TreeStructure> findTreeStructures(CustomTreeType type);
+
+    Logger getLogger();
+
+    /**
+     * Check if a player may build at a block.
+     */
+    boolean canBuild(Player player, Block block);
+
+    /**
+     * Run a task on an async thread.
+     */
+    void runAsync(Runnable task);
+
+    /**
+     * Run a task on the main thread at the next tick.  May be called
+     * from any thread.
+     */
+    void runSync(Runnable task);
+}
@@ -0,0 +1,187 @@
+package com.cavetale.trees;
+
+import com.cavetale.trees.util.PackedVector;
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * Coarse version of a tree for the miniature sapling preview.  The
+ * blocks are downsampled into cubic cells, each taking the most
+ * common palette entry of its blocks.  Runs of equal cells along the
+ * x axis are merged into one stretched box.  The cell size is the
+ * smallest one found by binary search for which the number of boxes
+ * fits the limit.
+ *
+ * Box coordinates are in blocks, relative to the sapling, like the
+ * offsets of a TreeVariant.
+ */
+@Getter
+public final class PreviewModel {
+    private final int maxBoxes;
+    private final int cellSize;
+    private final int[] boxX;
+    private final int[] boxY;
+    private final int[] boxZ;
+    /** Box length along the x axis, in blocks. */
+    private final int[] boxLength;
+    private final short[] paletteIndex;
+
+    private PreviewModel(final int maxBoxes, final int cellSize, final int count) {
+        this.maxBoxes = maxBoxes;
+        this.cellSize = cellSize;
+        this.boxX = new int[count];
+        this.boxY = new int[count];
+        this.boxZ = new int[count];
+        this.boxLength = new int[count];
+        this.paletteIndex = new short[count];
+    }
+
+    public int size() {
+        return boxX.length;
+    }
+
+    /**
+     * Build a preview model.
+     * @param offsets the packed offsets, see PackedVector
+     * @param palette the palette index of each offset
+     * @param maxBoxes the maximum number of boxes
+     */
+    public static PreviewModel build(int[] offsets, short[] palette, int maxBoxes) {
+        if (offsets.length == 0) return new PreviewModel(maxBoxes, 1, 0);
+        int ax = Integer.MAX_VALUE;
+        int ay = Integer.MAX_VALUE;
+        int az = Integer.MAX_VALUE;
+        int bx = Integer.MIN_VALUE;
+        int by = Integer.MIN_VALUE;
+        int bz = Integer.MIN_VALUE;
+        for (int packed : offsets) {
+            final int x = PackedVector.x(packed);
+            final int y = PackedVector.y(packed);
+            final int z = PackedVector.z(packed);
+            ax = Math.min(ax, x);
+            ay = Math.min(ay, y);
+            az = Math.min(az, z);
+            bx = Math.max(bx, x);
+            by = Math.max(by, y);
+            bz = Math.max(bz, z);
+        }
+        final int extent = Math.max(bx - ax, Math.max(by - ay, bz - az)) + 1;
+        final long[] keys = new long[offsets.length];
+        long[] cells = createCells(offsets, palette, ax, ay, az, 1, keys);
+        int cellSize = 1;
+        if (countBoxes(cells) > maxBoxes && extent > 1) {
+            // Binary search the smallest cell size that fits, assuming
+            // fewer boxes for larger cells.  One cell spanning the
+            // whole extent always fits.
+            int lo = 2;
+            int hi = extent;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (countBoxes(createCells(offsets, palette, ax, ay, az, mid, keys)) <= maxBoxes) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            cellSize = hi;
+            cells = createCells(offsets, palette, ax, ay, az, cellSize, keys);
+        }
+        final PreviewModel result = new PreviewModel(maxBoxes, cellSize, countBoxes(cells));
+        result.fill(cells, cellSize, ax, ay, az);
+        return result;
+    }
+
+    /**
+     * Downsample into cells of the given size.
+     * @param keys scratch space, one per offset
+     * @return the voted cells in sort order
+     */
+    private static long[] createCells(int[] offsets, short[] palette, int ax, int ay, int az, int cellSize, long[] keys) {
+        // Sort key: cell y, z, x, then palette index
+        for (int i = 0; i < offsets.length; i += 1) {
+            final int packed = offsets[i];
+            final long cx = (PackedVector.x(packed) - ax) / cellSize;
+            final long cy = (PackedVector.y(packed) - ay) / cellSize;
+            final long cz = (PackedVector.z(packed) - az) / cellSize;
+            keys[i] = (cy << 46) | (cz << 31) | (cx << 16) | (palette[i] & 0xFFFFL);
+        }
+        Arrays.sort(keys);
+        final long[] cells = new long[countCells(keys)];
+        voteCells(keys, cells);
+        return cells;
+    }
+
+    private static long cellOf(long key) {
+        return key >>> 16;
+    }
+
+    private static int countCells(long[] keys) {
+        int result = 0;
+        for (int i = 0; i < keys.length; i += 1) {
+            if (i == 0 || cellOf(keys[i]) != cellOf(keys[i - 1])) result += 1;
+        }
+        return result;
+    }
+
+    /**
+     * Find the most common palette index in each cell.  Ties go to
+     * the lowest index.
+     */
+    private static void voteCells(long[] keys, long[] cells) {
+        int cellIndex = 0;
+        int i = 0;
+        while (i < keys.length) {
+            final long cell = cellOf(keys[i]);
+            long best = keys[i];
+            int bestCount = 0;
+            while (i < keys.length && cellOf(keys[i]) == cell) {
+                final long key = keys[i];
+                int count = 0;
+                while (i < keys.length && keys[i] == key) {
+                    count += 1;
+                    i += 1;
+                }
+                if (count > bestCount) {
+                    best = key;
+                    bestCount = count;
+                }
+            }
+            cells[cellIndex++] = best;
+        }
+    }
+
+    /**
+     * Check if two cells can share a box: same row, adjacent along
+     * x, same palette index.
+     */
+    private static boolean continues(long previous, long cell) {
+        return (cell >>> 31) == (previous >>> 31)
+            && ((cell >>> 16) & 0x7FFFL) == ((previous >>> 16) & 0x7FFFL) + 1
+            && (cell & 0xFFFFL) == (previous & 0xFFFFL);
+    }
+
+    private static int countBoxes(long[] cells) {
+        int result = 0;
+        for (int i = 0; i < cells.length; i += 1) {
+            if (i == 0 || !continues(cells[i - 1], cells[i])) result += 1;
+        }
+        return result;
+    }
+
+    private void fill(long[] cells, int theCellSize, int ax, int ay, int az) {
+        int boxIndex = -1;
+        for (int i = 0; i < cells.length; i += 1) {
+            final long cell = cells[i];
+            if (i > 0 && continues(cells[i - 1], cell)) {
+                boxLength[boxIndex] += theCellSize;
+                continue;
+            }
+            boxIndex += 1;
+            boxX[boxIndex] = ax + (int) ((cell >>> 16) & 0x7FFFL) * theCellSize;
+            boxY[boxIndex] = ay + (int) (cell >>> 46) * theCellSize;
+            boxZ[boxIndex] = az + (int) ((cell >>> 31) & 0x7FFFL) * theCellSize;
+            boxLength[boxIndex] = theCellSize;
+            paletteIndex[boxIndex] = (short) (cell & 0xFFFFL);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.cavetale.trees;
+
+import com.cavetale.core.struct.Vec3i;
+import com.cavetale.trees.util.PackedVector;
+import static com.cavetale.trees.TreesPlugin.vector;
+
+/**
+ * Find the spot of the sapling in a tree structure: on top of the
+ * highest ground blocks, at their average x and z.  Independent of
+ * the server.
+ */
+public final class SaplingFinder {
+    private SaplingFinder() { }
+
+    /**
+     * @param ground the ground blocks as packed structure
+     *        coordinates, see PackedVector
+     * @param count the number of ground blocks
+     * @return the sapling, or null if there is no ground
+     */
+    public static Vec3i find(int[] ground, int count) {
+        int top = -1;
+        for (int i = 0; i < count; i += 1) {
+            top = Math.max(top, PackedVector.y(ground[i]));
+        }
+        if (top < 0) return null;
+        int totalX = 0;
+        int totalZ = 0;
+        int topCount = 0;
+        for (int i = 0; i < count; i += 1) {
+            if (PackedVector.y(ground[i]) != top) continue;
+            totalX += PackedVector.x(ground[i]);
+            totalZ += PackedVector.z(ground[i]);
+            topCount += 1;
+        }
+        return vector(totalX / topCount, top + 1, totalZ / topCount);
+    }
+}
@@ -1,21 +1,23 @@
 package com.cavetale.trees;
 
-import com.cavetale.core.event.block.PlayerBlockAbilityQuery;
 import com.cavetale.core.event.block.PlayerChangeBlockEvent;
 import com.cavetale.core.struct.Vec3i;
 import com.cavetale.mytems.item.tree.CustomTreeType;
-import com.cavetale.trees.util.Transform;
+import com.cavetale.trees.util.LongHashSet;
+import com.cavetale.trees.util.LongObjectMap;
+import com.cavetale.trees.util.PackedBlockPos;
 import java.util.ArrayList;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import org.bukkit.Bukkit;
+import lombok.ToString;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.GameRule;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -27,20 +29,24 @@ import org.bukkit.Tag;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.data.BlockData;
-import org.bukkit.block.data.type.Leaves;
 import org.bukkit.block.structure.Mirror;
 import org.bukkit.block.structure.StructureRotation;
 import org.bukkit.entity.BlockDisplay;
 import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.util.Transformation;
 import org.joml.AxisAngle4f;
 import org.joml.Vector3f;
 
-@RequiredArgsConstructor @Data
-public final class SeedPlantTask {
+@RequiredArgsConstructor @Data @ToString(onlyExplicitlyIncluded = true)
+public final class SeedPlantTask implements GrowthScheduler.Growable {
     private static final float BLOCK_DISPLAY_SCALE = 1f / 16f;
-    protected static final Map<Block, SeedPlantTask> SEED_PLANT_TASK_MAP = new HashMap<>();
+    /**
+     * Ticks between preview rotation updates.  The client
+     * interpolates the yaw in between, see setTeleportDuration.
+     */
+    private static final int PREVIEW_ROTATION_INTERVAL = 20;
+    private static final float PREVIEW_DEGREES_PER_TICK = 4.0f;
+    protected static final SeedPlantTaskIndex TASK_INDEX = new SeedPlantTaskIndex();
     public static final Set<Material> REPLACEABLES = EnumSet.of(Material.DIRT, new Material[] {
             Material.COARSE_DIRT,
             Material.GRASS_BLOCK,
@@ -56,21 +62,32 @@ public final class SeedPlantTask {
             Material.MOSS_CARPET,
             Material.MOSS_BLOCK,
         });
-    private final TreesPlugin plugin;
-    private final Player player;
-    private final CustomTreeType type;
-    private final World world;
-    private final Vec3i sapling;
+    private final PlantingContext context;
+    @ToString.Include private final Player player;
+    @ToString.Include private final CustomTreeType type;
+    @ToString.Include private final World world;
+    @ToString.Include private final Vec3i sapling;
     private TreeStructure treeStructure;
+    private TreeVariant variant;
     private StructureRotation rotation = StructureRotation.NONE;
     private Mirror mirror = Mirror.NONE;
-    private BukkitTask task;
+    private boolean stopped;
+    /** Waiting for admission to start growing. */
+    private boolean queued;
+    /** Holds a growth slot of the PlantingAdmission until stopped. */
+    private boolean admitted;
+    /** Offset of periodic effects, assigned by the scheduler. */
+    private int phase;
     private int saplingTicks = 200;
     private int totalTicks;
+    private int nextPreviewRotation;
     private int blockIndex;
-    private boolean valid;
+    /** The preview model until its displays are spawned. */
+    private CompletableFuture<PreviewModel> previewRequest;
+    private Validation validation = Validation.PENDING;
     private final List<BlockDisplay> blockDisplayList = new ArrayList<>();
-    private State state = State.INIT;
+    private final PlacementBatch batch = new PlacementBatch();
+    @ToString.Include private State state = State.INIT;
 
     public enum State {
         INIT,
@@ -81,9 +98,17 @@ public final class SeedPlantTask {
         DONE,
         INVALID,
         CANCELLED,
+        /** Sprouting is over but validation is still pending. */
+        VALIDATING,
         ;
     }
 
+    public enum Validation {
+        PENDING,
+        VALID,
+        INVALID;
+    }
+
     static {
         REPLACEABLES.addAll(Tag.DIRT.getValues());
         REPLACEABLES.addAll(Tag.SAPLINGS.getValues());
@@ -96,27 +121,42 @@ public final class SeedPlantTask {
         if (!block.isEmpty() && !REPLACEABLES.contains(block.getType())) {
             return false;
         }
-        return PlayerBlockAbilityQuery.Action.BUILD.query(player, block);
+        return context.canBuild(player, block);
     }
 
-    public Vec3i toWorldVector(Vec3i vec) {
-        vec = vec.subtract(treeStructure.sapling);
-        vec = Transform.rotate(vec, rotation, mirror);
-        return vec.add(sapling);
+    /**
+     * Get the world block of the variant block at the given index.
+     */
+    public Block toWorldBlock(int index) {
+        return world.getBlockAt(sapling.x + variant.getOffsetX(index),
+                                sapling.y + variant.getOffsetY(index),
+                                sapling.z + variant.getOffsetZ(index));
     }
 
     public void start() {
-        this.valid = initialize();
-        task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 0L, 1L);
-        SEED_PLANT_TASK_MAP.put(sapling.toBlock(world), this);
+        final GrowthMetrics metrics = context.getGrowthMetrics();
+        metrics.count(GrowthMetrics.Counter.PLANTED);
+        final long time = System.nanoTime();
+        if (!initialize()) {
+            validation = Validation.INVALID;
+        }
+        metrics.record(GrowthMetrics.Timer.INITIALIZE, System.nanoTime() - time);
+        phase = context.getGrowthScheduler().add(this);
+        TASK_INDEX.add(this);
         state = State.INITIALIZED;
     }
 
+    /**
+     * Lengthen the sprout phase and mark this task as queued.  The
+     * admission is asked again once the sprout phase is over.
+     */
+    public void delaySprout(int extraTicks) {
+        saplingTicks += extraTicks;
+        queued = true;
+    }
+
     private boolean initialize() {
-        for (SeedPlantTask it : SEED_PLANT_TASK_MAP.values()) {
-            if (player.equals(it.player)) return false;
-        }
-        List<TreeStructure> treeStructureList = plugin.findTreeStructures(type);
+        List<TreeStructure> treeStructureList = context.findTreeStructures(type);
         if (treeStructureList.isEmpty()) return false;
         Random random = ThreadLocalRandom.current();
         this.treeStructure = treeStructureList.get(random.nextInt(treeStructureList.size()));
@@ -124,36 +164,130 @@ public final class SeedPlantTask {
         Mirror[] mirrors = Mirror.values();
         this.rotation = rotations[random.nextInt(rotations.length)];
         this.mirror = mirrors[random.nextInt(mirrors.length)];
-        for (Vec3i vec : treeStructure.getPlaceBlockList()) {
-            if (!canReplaceBlock(toWorldVector(vec).toBlock(world))) return false;
-        }
+        this.variant = treeStructure.getVariant(rotation, mirror);
+        if (!startValidation()) return false;
         saplingTicks = 200 + random.nextInt(200) - random.nextInt(50);
+        previewRequest = variant.requestPreviewModel(context.getPreviewMaxDisplays(), context::runAsync);
+        return true;
+    }
+
+    /**
+     * Spawn the preview displays once the preview model is ready.
+     * Called while sprouting.
+     */
+    private void updatePreview() {
+        if (previewRequest == null || !previewRequest.isDone()) return;
+        final CompletableFuture<PreviewModel> request = previewRequest;
+        previewRequest = null;
+        if (request.isCompletedExceptionally()) return;
+        final PreviewModel previewModel = request.join();
         final Location location = sapling.toCenterFloorLocation(world).add(0, 1.0, 0);
-        for (Vec3i vec : treeStructure.getPlaceBlockList()) {
-            final BlockData blockData = treeStructure.getBlockDataMap().get(vec);
-            final Vec3i vector = vec.subtract(treeStructure.getSapling());
-            final Vector3f translation = new Vector3f((float) vector.x, (float) vector.y, (float) vector.z)
+        final long spawnTime = System.nanoTime();
+        for (int i = 0; i < previewModel.size(); i += 1) {
+            final BlockData blockData = variant.getPalette()[previewModel.getPaletteIndex()[i]];
+            final Vector3f translation = new Vector3f((float) previewModel.getBoxX()[i],
+                                                      (float) previewModel.getBoxY()[i],
+                                                      (float) previewModel.getBoxZ()[i])
                 .sub(0.5f, 0.5f, 0.5f)
                 .mul(BLOCK_DISPLAY_SCALE);
             final AxisAngle4f leftRotation = new AxisAngle4f(0f, 0f, 1f, 0f);
-            final Vector3f scale = new Vector3f(BLOCK_DISPLAY_SCALE, BLOCK_DISPLAY_SCALE, BLOCK_DISPLAY_SCALE);
+            final float cell = (float) previewModel.getCellSize() * BLOCK_DISPLAY_SCALE;
+            final Vector3f scale = new Vector3f((float) previewModel.getBoxLength()[i] * BLOCK_DISPLAY_SCALE, cell, cell);
             final AxisAngle4f rightRotation = new AxisAngle4f(0f, 0f, 0f, 0f);
             final BlockDisplay blockDisplay = world.spawn(location, BlockDisplay.class, e -> {
                     e.setPersistent(false);
                     e.setBlock(blockData);
                     e.setTransformation(new Transformation(translation, leftRotation, scale, rightRotation));
+                    e.setTeleportDuration(PREVIEW_ROTATION_INTERVAL);
                 });
             blockDisplayList.add(blockDisplay);
         }
+        final GrowthMetrics metrics = context.getGrowthMetrics();
+        metrics.record(GrowthMetrics.Timer.SPAWN_DISPLAYS, System.nanoTime() - spawnTime);
+        metrics.count(GrowthMetrics.Counter.DISPLAYS_SPAWNED, previewModel.size());
+        // Join the spin right away
+        nextPreviewRotation = 0;
+    }
+
+    /**
+     * Validate the placement in two parts.  Build permission is
+     * queried here, once per affected block column, so a claim
+     * border anywhere in the tree refuses the whole placement.
+     * Materials are then checked asynchronously against chunk
+     * snapshots.  The result arrives on the main thread and sets the
+     * validation.  Blocks are checked again one by one while
+     * growing.
+     *
+     * @return false if the placement is already known to be invalid
+     */
+    private boolean startValidation() {
+        final long validationStart = System.nanoTime();
+        final LongObjectMap<ChunkSnapshot> snapshots = new LongObjectMap<>();
+        final LongHashSet columns = new LongHashSet();
+        for (int i = 0; i < variant.getBlockCount(); i += 1) {
+            final int x = sapling.x + variant.getOffsetX(i);
+            final int z = sapling.z + variant.getOffsetZ(i);
+            if (!columns.add(PackedBlockPos.pack(x, 0, z))) continue;
+            final long chunkKey = Chunk.getChunkKey(x >> 4, z >> 4);
+            if (!snapshots.containsKey(chunkKey)) {
+                if (!world.isChunkLoaded(x >> 4, z >> 4)) return false;
+                snapshots.put(chunkKey, world.getChunkAt(x >> 4, z >> 4).getChunkSnapshot(false, false, false));
+            }
+            final Block block = world.getBlockAt(x, sapling.y + variant.getOffsetY(i), z);
+            if (!context.canBuild(player, block)) return false;
+        }
+        final int minY = world.getMinHeight();
+        final int maxY = world.getMaxHeight();
+        final TreeVariant theVariant = variant;
+        context.runAsync(() -> {
+                boolean result = true;
+                for (int i = 0; i < theVariant.getBlockCount(); i += 1) {
+                    final int x = sapling.x + theVariant.getOffsetX(i);
+                    final int y = sapling.y + theVariant.getOffsetY(i);
+                    final int z = sapling.z + theVariant.getOffsetZ(i);
+                    if (y < minY || y >= maxY) {
+                        result = false;
+                        break;
+                    }
+                    final ChunkSnapshot snapshot = snapshots.get(Chunk.getChunkKey(x >> 4, z >> 4));
+                    final Material material = snapshot.getBlockType(x & 15, y, z & 15);
+                    if (!material.isAir() && !REPLACEABLES.contains(material)) {
+                        result = false;
+                        break;
+                    }
+                }
+                final Validation theValidation = result ? Validation.VALID : Validation.INVALID;
+                context.runSync(() -> {
+                        validation = theValidation;
+                        context.getGrowthMetrics().record(GrowthMetrics.Timer.VALIDATION, System.nanoTime() - validationStart);
+                    });
+            });
         return true;
     }
 
+    @Override
     public void stop() {
-        SEED_PLANT_TASK_MAP.remove(sapling.toBlock(world));
-        clearBlockDisplays();
-        if (task != null) {
-            task.cancel();
+        if (stopped) return;
+        stopped = true;
+        TASK_INDEX.remove(this);
+        if (admitted) {
+            admitted = false;
+            context.getPlantingAdmission().stopGrowing(world);
         }
+        clearBlockDisplays();
+    }
+
+    /**
+     * Stop and count the reason in the metrics.
+     */
+    private void abort(GrowthMetrics.Abort reason) {
+        context.getGrowthMetrics().abort(reason);
+        stop();
+    }
+
+    @Override
+    public boolean isGrowing() {
+        return state == State.GROW && !stopped;
     }
 
     private void clearBlockDisplays() {
@@ -168,22 +302,27 @@ public final class SeedPlantTask {
         world.dropItem(sapling.toCenterLocation(world), type.seedMytems.createItemStack());
     }
 
-    private void tick() {
+    @Override
+    public void tick() {
         int ticks = totalTicks++;
-        if (!player.isOnline() || !world.isChunkLoaded(sapling.x >> 4, sapling.z >> 4)) {
-            stop();
+        if (!player.isOnline()) {
+            abort(GrowthMetrics.Abort.PLAYER_OFFLINE);
+            return;
+        }
+        if (!world.isChunkLoaded(sapling.x >> 4, sapling.z >> 4)) {
+            abort(GrowthMetrics.Abort.CHUNK_UNLOADED);
             return;
         }
         switch (state) {
         case CANCELLED:
-            stop();
+            abort(GrowthMetrics.Abort.SAPLING_BROKEN);
             drop();
             break;
         case INITIALIZED: {
             Block saplingBlock = sapling.toBlock(world);
             Block floorBlock = saplingBlock.getRelative(0, -1, 0);
             if (!canReplaceBlock(saplingBlock) || !canReplaceBlock(floorBlock)) {
-                stop();
+                abort(GrowthMetrics.Abort.CANNOT_REPLACE);
                 drop();
                 return;
             }
@@ -195,67 +334,143 @@ public final class SeedPlantTask {
             break;
         }
         case SPROUT_PREVIEW:
+        case VALIDATING:
             if (sapling.toBlock(world).getType() != type.saplingMaterial) {
-                stop();
+                abort(GrowthMetrics.Abort.SAPLING_BROKEN);
                 return;
             }
-            if (ticks % 12 == 0) {
-                Location location = sapling.toCenterLocation(world);
-                world.spawnParticle(Particle.BLOCK, location, 8, 0.25, 0.25, 0.25, 0.0,
-                                    type.saplingMaterial.createBlockData());
-                world.playSound(location, Sound.BLOCK_GRASS_BREAK, SoundCategory.BLOCKS, 0.5f, 1.75f);
+            if ((ticks + phase) % GrowthScheduler.PHASE_PERIOD == 0) {
+                context.getGrowthEffects().spawnParticle(world, sapling.x, sapling.y, sapling.z,
+                                                         Particle.BLOCK, 8, 0.25, type.saplingMaterial.createBlockData());
+                context.getGrowthEffects().playSound(world, sapling.x, sapling.y, sapling.z,
+                                                    Sound.BLOCK_GRASS_BREAK, 0.5f, 1.75f);
             }
-            for (BlockDisplay blockDisplay : blockDisplayList) {
-                blockDisplay.setRotation((float) ticks * 4.0f, 0f);
+            updatePreview();
+            if (ticks >= nextPreviewRotation) {
+                // Aim for where the spin should be at the next update
+                nextPreviewRotation = ticks + PREVIEW_ROTATION_INTERVAL;
+                final float yaw = (float) nextPreviewRotation * PREVIEW_DEGREES_PER_TICK;
+                for (BlockDisplay blockDisplay : blockDisplayList) {
+                    blockDisplay.setRotation(yaw, 0f);
+                }
             }
             if (ticks >= saplingTicks) {
-                state = State.START_GROWING;
+                final PlantingAdmission admission = context.getPlantingAdmission();
+                if (validation == Validation.PENDING) {
+                    state = State.VALIDATING;
+                } else if (validation == Validation.INVALID) {
+                    queued = false;
+                    state = State.START_GROWING;
+                } else if (admission.tryStartGrowing(world)) {
+                    admitted = true;
+                    queued = false;
+                    state = State.START_GROWING;
+                } else {
+                    delaySprout(ticks - saplingTicks + admission.getSproutExtensionTicks());
+                }
             }
             break;
         case START_GROWING:
             clearBlockDisplays();
             sapling.toBlock(world).setType(Material.AIR);
-            if (!valid) {
+            if (validation != Validation.VALID) {
                 state = State.INVALID;
-                stop();
+                abort(GrowthMetrics.Abort.INVALID);
                 drop();
                 Location location = sapling.toLocation(world).add(0.5, 0.5, 0.5);
                 world.playSound(location, Sound.BLOCK_GRASS_BREAK, SoundCategory.BLOCKS, 1.0f, 0.5f);
             } else {
                 state = State.GROW;
-                plugin.getLogger().info("Growing " + type + " " + treeStructure.name
+                context.getGrowthMetrics().count(GrowthMetrics.Counter.STARTED_GROWING);
+                context.getLogger().info("Growing " + type + " " + treeStructure.name
                                         + " at " + world.getName() + " " + sapling
                                         + " for " + player.getName());
             }
             break;
         case GROW:
-            for (int i = 0; i < 8;) {
-                if (blockIndex >= treeStructure.getPlaceBlockList().size()) {
-                    state = State.DONE;
-                    stop();
-                    return;
-                }
-                Vec3i originVector = treeStructure.getPlaceBlockList().get(blockIndex++);
-                BlockData blockData = treeStructure.getBlockDataMap().get(originVector);
-                i += Tag.LEAVES.isTagged(blockData.getMaterial()) ? 1 : 4;
-                Vec3i blockVector = toWorldVector(originVector);
-                Block block = blockVector.toBlock(world);
-                if (!canReplaceBlock(block)) {
-                    stop();
+            // Growth turns are handed out by the GrowthScheduler
+            break;
+        default: throw new IllegalStateException("state=" + state);
+        }
+    }
+
+    /**
+     * Place the next blocks, worth up to the given weight.  Leaves
+     * weigh 1, other blocks 4.  The blocks are applied in chunk and
+     * section order.  Growth stops if any block cannot be replaced
+     * or its chunk is not loaded.
+     */
+    @Override
+    public void grow(int maxWeight) {
+        final int blockCount = variant.getBlockCount();
+        batch.clear();
+        int weight = 0;
+        while (weight < maxWeight && blockIndex < blockCount && !batch.isFull()) {
+            final int index = blockIndex++;
+            final Material material = variant.getBlockData(index).getMaterial();
+            weight += Tag.LEAVES.isTagged(material) ? 1 : 4;
+            batch.add(index,
+                      sapling.x + variant.getOffsetX(index),
+                      sapling.y + variant.getOffsetY(index),
+                      sapling.z + variant.getOffsetZ(index),
+                      Materials.isFoliage(material));
+        }
+        batch.sort();
+        final TreeBlocksGrowEvent.Mode eventMode = context.getBlockEventMode();
+        final boolean bulk = eventMode.isBulk()
+            && TreeBlocksGrowEvent.getHandlerList().getRegisteredListeners().length > 0;
+        final long[] positions = bulk ? new long[batch.size()] : null;
+        final BlockData[] placed = bulk ? new BlockData[batch.size()] : null;
+        int placedCount = 0;
+        Chunk chunk = null;
+        for (int i = 0; i < batch.size(); i += 1) {
+            final int index = batch.getIndex(i);
+            final int x = sapling.x + variant.getOffsetX(index);
+            final int y = sapling.y + variant.getOffsetY(index);
+            final int z = sapling.z + variant.getOffsetZ(index);
+            final int cx = x >> 4;
+            final int cz = z >> 4;
+            if (chunk == null || chunk.getX() != cx || chunk.getZ() != cz) {
+                if (!world.isChunkLoaded(cx, cz)) {
+                    context.getGrowthMetrics().count(GrowthMetrics.Counter.BLOCKS_PLACED, i);
+                    callBlocksGrowEvent(positions, placed, placedCount);
+                    abort(GrowthMetrics.Abort.CHUNK_UNLOADED);
                     return;
                 }
-                if (blockData instanceof Leaves leaves) {
-                    leaves.setPersistent(true);
-                }
-                Transform.rotate(blockData, rotation, mirror);
+                chunk = world.getChunkAt(cx, cz);
+            }
+            final Block block = chunk.getBlock(x & 15, y, z & 15);
+            if (!canReplaceBlock(block)) {
+                context.getGrowthMetrics().count(GrowthMetrics.Counter.BLOCKS_PLACED, i);
+                callBlocksGrowEvent(positions, placed, placedCount);
+                abort(GrowthMetrics.Abort.CANNOT_REPLACE);
+                return;
+            }
+            final BlockData blockData = variant.getBlockData(index);
+            if (eventMode.isPerBlock()) {
                 new PlayerChangeBlockEvent(player, block, blockData).callEvent();
-                block.setBlockData(blockData, false);
-                SoundGroup soundGroup = blockData.getSoundGroup();
-                world.playSound(block.getLocation().add(0.5, 0.5, 0.5), soundGroup.getPlaceSound(), SoundCategory.BLOCKS, 0.5f, 1.65f);
             }
-            break;
-        default: throw new IllegalStateException("state=" + state);
+            block.setBlockData(blockData, false);
+            if (bulk) {
+                positions[placedCount] = Block.getBlockKey(x, y, z);
+                placed[placedCount] = blockData;
+                placedCount += 1;
+            }
+            SoundGroup soundGroup = blockData.getSoundGroup();
+            context.getGrowthEffects().playSound(world, x, y, z, soundGroup.getPlaceSound(), 0.5f, 1.65f);
         }
+        context.getGrowthMetrics().count(GrowthMetrics.Counter.BLOCKS_PLACED, batch.size());
+        callBlocksGrowEvent(positions, placed, placedCount);
+        if (blockIndex >= blockCount) {
+            state = State.DONE;
+            context.getGrowthMetrics().count(GrowthMetrics.Counter.DONE);
+            stop();
+        }
+    }
+
+    private void callBlocksGrowEvent(long[] positions, BlockData[] placed, int placedCount) {
+        if (positions == null || placedCount == 0) return;
+        new TreeBlocksGrowEvent(player, world, positions, placed, placedCount).callEvent();
     }
 
     /**
@@ -268,7 +483,7 @@ public final class SeedPlantTask {
      * otherwise.
      */
     protected boolean onBreakSapling(Player thePlayer) {
-        if (state != State.SPROUT_PREVIEW) {
+        if (state != State.SPROUT_PREVIEW && state != State.VALIDATING) {
             return false;
         }
         final Block saplingBlock = sapling.toBlock(world);
@@ -0,0 +1,81 @@
+package com.cavetale.trees;
+
+import com.cavetale.trees.util.LongObjectMap;
+import com.cavetale.trees.util.PackedBlockPos;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.bukkit.World;
+
+/**
+ * Index of active seed plant tasks by sapling position and by
+ * player.  Positions are packed into one long per world, see
+ * PackedBlockPos.  Main
+ * thread only.
+ */
+public final class SeedPlantTaskIndex {
+    private final Map<UUID, LongObjectMap<SeedPlantTask>> worldMap = new HashMap<>();
+    private final Map<UUID, List<SeedPlantTask>> playerMap = new HashMap<>();
+    private int size;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(SeedPlantTask task) {
+        final LongObjectMap<SeedPlantTask> map = worldMap.computeIfAbsent(task.getWorld().getUID(), u -> new LongObjectMap<>());
+        final SeedPlantTask old = map.put(PackedBlockPos.pack(task.getSapling().x, task.getSapling().y, task.getSapling().z), task);
+        if (old != null) removePlayerTask(old);
+        else size += 1;
+        playerMap.computeIfAbsent(task.getPlayer().getUniqueId(), u -> new ArrayList<>(1)).add(task);
+    }
+
+    public void remove(SeedPlantTask task) {
+        final LongObjectMap<SeedPlantTask> map = worldMap.get(task.getWorld().getUID());
+        if (map == null) return;
+        final long key = PackedBlockPos.pack(task.getSapling().x, task.getSapling().y, task.getSapling().z);
+        if (map.get(key) != task) return;
+        map.remove(key);
+        size -= 1;
+        if (map.isEmpty()) worldMap.remove(task.getWorld().getUID());
+        removePlayerTask(task);
+    }
+
+    private void removePlayerTask(SeedPlantTask task) {
+        final UUID uuid = task.getPlayer().getUniqueId();
+        final List<SeedPlantTask> list = playerMap.get(uuid);
+        if (list == null) return;
+        list.remove(task);
+        if (list.isEmpty()) playerMap.remove(uuid);
+    }
+
+    public SeedPlantTask get(World world, int x, int y, int z) {
+        if (size == 0) return null;
+        final LongObjectMap<SeedPlantTask> map = worldMap.get(world.getUID());
+        return map != null ? map.get(PackedBlockPos.pack(x, y, z)) : null;
+    }
+
+    /**
+     * Get the active tasks of a player.  The list must not be
+     * modified.
+     */
+    public List<SeedPlantTask> getPlayerTasks(UUID uuid) {
+        return playerMap.getOrDefault(uuid, List.of());
+    }
+
+    /**
+     * Stop all tasks in a world and drop its index.
+     */
+    public void unloadWorld(World world) {
+        final LongObjectMap<SeedPlantTask> map = worldMap.get(world.getUID());
+        if (map == null) return;
+        map.forEachValue(SeedPlantTask::stop);
+        worldMap.remove(world.getUID());
+    }
+}
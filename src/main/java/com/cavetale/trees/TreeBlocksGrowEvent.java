@@ -0,0 +1,69 @@
+package com.cavetale.trees;
+
+import lombok.Getter;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called once per growth turn after a growing tree placed its
+ * blocks, instead of one PlayerChangeBlockEvent per block.  The
+ * positions are block keys, see Block#getBlockKey(int, int, int).
+ * The arrays may be longer than the block count and must not be
+ * modified.
+ */
+@Getter
+public final class TreeBlocksGrowEvent extends Event {
+    private static final HandlerList HANDLER_LIST = new HandlerList();
+    private final Player player;
+    private final World world;
+    private final long[] positions;
+    private final BlockData[] blockData;
+    private final int blockCount;
+
+    public TreeBlocksGrowEvent(final Player player, final World world,
+                               final long[] positions, final BlockData[] blockData, final int blockCount) {
+        this.player = player;
+        this.world = world;
+        this.positions = positions;
+        this.blockData = blockData;
+        this.blockCount = blockCount;
+    }
+
+    public Block getBlock(int index) {
+        return world.getBlockAt(Block.getBlockKeyX(positions[index]),
+                                Block.getBlockKeyY(positions[index]),
+                                Block.getBlockKeyZ(positions[index]));
+    }
+
+    /**
+     * Which events a growing tree calls for the blocks it places.
+     */
+    public enum Mode {
+        /** One TreeBlocksGrowEvent per growth turn. */
+        BULK,
+        /** One PlayerChangeBlockEvent per block. */
+        PER_BLOCK,
+        BOTH;
+
+        public boolean isBulk() {
+            return this != PER_BLOCK;
+        }
+
+        public boolean isPerBlock() {
+            return this != BULK;
+        }
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLER_LIST;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLER_LIST;
+    }
+}
@@ -0,0 +1,143 @@
+package com.cavetale.trees;
+
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import lombok.Getter;
+import lombok.Setter;
+import org.bukkit.Bukkit;
+
+/**
+ * Least recently used set of tree structures whose blocks are
+ * loaded, for lazy loading.  Whenever the estimated heap of all
+ * loaded structures exceeds maxBytes, the least recently used ones
+ * are unloaded.  Only structures which can load their blocks again
+ * from the pack cache are tracked.  Does nothing unless enabled.
+ * Main thread only.
+ */
+final class TreeDataCache {
+    /** Keys by identity, since TreeStructure equality depends on its contents. */
+    private final LinkedHashMap<Key, Long> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final EnumSet<CustomTreeType> prefetching = EnumSet.noneOf(CustomTreeType.class);
+    @Getter @Setter private boolean enabled;
+    @Getter @Setter private long maxBytes = 32L * 1024L * 1024L;
+    @Getter private long residentBytes;
+    @Getter private long loads;
+    @Getter private long evictions;
+
+    private record Key(TreeStructure treeStructure) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && key.treeStructure == treeStructure;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(treeStructure);
+        }
+    }
+
+    public int getResidentCount() {
+        return resident.size();
+    }
+
+    /**
+     * Mark a structure as most recently used and update its size,
+     * then unload others until the cap is met.  The structure itself
+     * stays loaded, even if it exceeds the cap on its own.
+     */
+    public void touch(TreeStructure treeStructure) {
+        if (!enabled || !treeStructure.isLoaded() || !treeStructure.hasPackSource()) return;
+        final long bytes = treeStructure.getRetainedBytes() + treeStructure.getVariantRetainedBytes();
+        final Long old = resident.put(new Key(treeStructure), bytes);
+        if (old == null) {
+            loads += 1;
+            residentBytes += bytes;
+        } else {
+            residentBytes += bytes - old;
+        }
+        if (residentBytes <= maxBytes) return;
+        final Iterator<Map.Entry<Key, Long>> iter = resident.entrySet().iterator();
+        while (residentBytes > maxBytes && iter.hasNext()) {
+            final Map.Entry<Key, Long> entry = iter.next();
+            final TreeStructure it = entry.getKey().treeStructure();
+            if (it == treeStructure) continue;
+            iter.remove();
+            residentBytes -= entry.getValue();
+            if (it.unload()) evictions += 1;
+        }
+    }
+
+    /**
+     * Update after a load.  Structures which were reused from the
+     * previous load keep their place.  Tracked structures which were
+     * removed or replaced are forgotten, and, if enabled, new ones
+     * are unloaded until used.
+     * @param previous the structures of the previous load
+     * @param treeStructures the structures of this load
+     */
+    public void update(Collection<TreeStructure> previous, List<TreeStructure> treeStructures) {
+        final Set<Key> current = new HashSet<>();
+        for (TreeStructure it : treeStructures) {
+            current.add(new Key(it));
+        }
+        final Iterator<Map.Entry<Key, Long>> iter = resident.entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<Key, Long> entry = iter.next();
+            if (current.contains(entry.getKey())) continue;
+            iter.remove();
+            residentBytes -= entry.getValue();
+        }
+        if (!enabled) return;
+        final Set<Key> old = new HashSet<>();
+        for (TreeStructure it : previous) {
+            old.add(new Key(it));
+        }
+        for (TreeStructure it : treeStructures) {
+            if (!old.contains(new Key(it))) it.unload();
+        }
+    }
+
+    /**
+     * Load the blocks of some structures of one type on an async
+     * thread, as many as fit into half the cap, unless that type is
+     * already being prefetched.
+     */
+    public void prefetch(TreesPlugin plugin, CustomTreeType type, List<TreeStructure> treeStructures) {
+        if (!enabled || prefetching.contains(type)) return;
+        final List<TreeStructure> list = new ArrayList<>();
+        long bytes = 0L;
+        for (TreeStructure it : treeStructures) {
+            if (it.isLoaded() || !it.hasPackSource()) continue;
+            bytes += TreeStructure.getBlocksRetainedBytes(it.getBlockCount());
+            if (bytes > maxBytes / 2L) break;
+            list.add(it);
+        }
+        if (list.isEmpty()) return;
+        prefetching.add(type);
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                for (TreeStructure it : list) {
+                    try {
+                        it.load();
+                    } catch (RuntimeException re) {
+                        plugin.getLogger().log(Level.WARNING, "Prefetching " + type + " " + it.getName(), re);
+                    }
+                }
+                if (!plugin.isEnabled()) return;
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                        prefetching.remove(type);
+                        for (TreeStructure it : list) {
+                            touch(it);
+                        }
+                    });
+            });
+    }
+}
@@ -0,0 +1,267 @@
+package com.cavetale.trees;
+
+import com.cavetale.core.struct.Vec3i;
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import org.bukkit.Bukkit;
+import org.bukkit.block.data.BlockData;
+import static com.cavetale.trees.TreesPlugin.vector;
+
+/**
+ * The compiled tree pack cache.  One binary file per source folder
+ * holds every successfully loaded structure of that folder: type,
+ * name, sapling, size, placement order and the palette as block
+ * state strings.  Each entry is keyed by the size, modification time
+ * and hash of its source file.
+ *
+ * The file is read through a read-only memory mapping and replaced
+ * atomically when written, so several server processes can share
+ * it.  Entries are decoded on demand and decoding is thread safe.
+ * Structures decoded from here keep a reference to it, so their
+ * blocks can be dropped and decoded again later.
+ */
+public final class TreePackCache {
+    public static final String FILENAME = "trees.cache";
+    private static final int MAGIC = 0x54524545; // TREE
+    /** Bump whenever the format or the placement order changes. */
+    private static final int VERSION = 3;
+    private static final TreePackCache EMPTY = new TreePackCache(null, Map.of());
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries;
+
+    private TreePackCache(final ByteBuffer buffer, final Map<String, Entry> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Identifies one version of a source file.
+     */
+    public record Stamp(long size, long lastModified, long hash) {
+        public static long hash(byte[] bytes) {
+            CRC32C crc = new CRC32C();
+            crc.update(bytes);
+            return crc.getValue();
+        }
+    }
+
+    /**
+     * One compiled structure.  The data is located at offset and
+     * spans length bytes of the buffer.
+     */
+    public record Entry(CustomTreeType type, String name, Stamp stamp, int offset, int length) { }
+
+    /**
+     * A structure to be written, along with the stamp of its source
+     * file.
+     */
+    public record Compiled(TreeStructure treeStructure, Stamp stamp) { }
+
+    public static TreePackCache empty() {
+        return EMPTY;
+    }
+
+    private static String key(CustomTreeType type, String name) {
+        return type.name() + "/" + name;
+    }
+
+    public Entry get(CustomTreeType type, String name) {
+        return entries.get(key(type, name));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Map and index the cache file.  Missing, unreadable and
+     * outdated files yield an empty cache.
+     */
+    public static TreePackCache open(File file) throws IOException {
+        if (!file.isFile()) return EMPTY;
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return EMPTY;
+        if (!Bukkit.getMinecraftVersion().equals(readString(buffer))) return EMPTY;
+        final int count = buffer.getInt();
+        final Map<String, Entry> entries = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i += 1) {
+            final String typeName = readString(buffer);
+            final String name = readString(buffer);
+            final Stamp stamp = new Stamp(buffer.getLong(), buffer.getLong(), buffer.getLong());
+            final int length = buffer.getInt();
+            final int offset = buffer.position();
+            buffer.position(offset + length);
+            final CustomTreeType type;
+            try {
+                type = CustomTreeType.valueOf(typeName);
+            } catch (IllegalArgumentException iae) {
+                continue;
+            }
+            entries.put(key(type, name), new Entry(type, name, stamp, offset, length));
+        }
+        return new TreePackCache(buffer, entries);
+    }
+
+    /**
+     * Decode one entry including its blocks.  BlockData strings
+     * which no longer parse and damaged blocks cause an
+     * IllegalArgumentException.
+     */
+    public TreeStructure decode(Entry entry) {
+        final TreeStructure result = decodeMetadata(entry);
+        result.load();
+        return result;
+    }
+
+    /**
+     * Decode the metadata and palette of one entry, but not its
+     * blocks.  The result loads them from this cache when they are
+     * first needed.  BlockData strings which no longer parse cause
+     * an IllegalArgumentException.
+     */
+    public TreeStructure decodeMetadata(Entry entry) {
+        final ByteBuffer data = buffer.slice(entry.offset(), entry.length());
+        final String originWorld = readString(data);
+        final Vec3i origin = vector(data.getInt(), data.getInt(), data.getInt());
+        final Vec3i sapling = vector(data.getInt(), data.getInt(), data.getInt());
+        final Vec3i size = vector(data.getInt(), data.getInt(), data.getInt());
+        final BlockData[] palette = new BlockData[data.getInt()];
+        for (int i = 0; i < palette.length; i += 1) {
+            palette[i] = TreesPlugin.getBlockDataPool().get(readString(data), Bukkit::createBlockData);
+        }
+        final int blockCount = data.getInt();
+        if (blockCount < 0 || (long) data.remaining() != 6L * blockCount) {
+            throw new IllegalArgumentException("Invalid block count: " + blockCount);
+        }
+        final TreeStructure result = new TreeStructure(entry.type(), entry.name(), size, originWorld, origin, sapling,
+                                                       palette, blockCount);
+        result.setPackSource(this, entry);
+        return result;
+    }
+
+    /**
+     * Decode the blocks of one entry.  Thread safe.
+     */
+    TreeStructure.Blocks decodeBlocks(Entry entry, int paletteLength) {
+        final ByteBuffer data = buffer.slice(entry.offset(), entry.length());
+        skipString(data);
+        data.position(data.position() + 9 * 4); // origin, sapling, size
+        final int storedPaletteLength = data.getInt();
+        if (storedPaletteLength != paletteLength) {
+            throw new IllegalArgumentException("Palette mismatch: " + storedPaletteLength + "/" + paletteLength);
+        }
+        for (int i = 0; i < storedPaletteLength; i += 1) {
+            skipString(data);
+        }
+        final int blockCount = data.getInt();
+        final int[] placeBlocks = new int[blockCount];
+        data.asIntBuffer().get(placeBlocks);
+        data.position(data.position() + 4 * blockCount);
+        final short[] paletteIndex = new short[blockCount];
+        data.asShortBuffer().get(paletteIndex);
+        for (short it : paletteIndex) {
+            if (it < 0 || it >= paletteLength) throw new IllegalArgumentException("Invalid palette index: " + it);
+        }
+        return new TreeStructure.Blocks(placeBlocks, paletteIndex);
+    }
+
+    /**
+     * Copy the encoded data of one entry, to be written to a new
+     * cache file without decoding it.
+     */
+    byte[] copyData(Entry entry) {
+        final byte[] result = new byte[entry.length()];
+        buffer.get(entry.offset(), result);
+        return result;
+    }
+
+    /**
+     * Write a new cache file, replacing the old one atomically.
+     */
+    public static void write(File file, List<Compiled> compiledList) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, Bukkit.getMinecraftVersion());
+        out.writeInt(compiledList.size());
+        for (Compiled compiled : compiledList) {
+            final TreeStructure treeStructure = compiled.treeStructure();
+            writeString(out, treeStructure.getType().name());
+            writeString(out, treeStructure.getName());
+            out.writeLong(compiled.stamp().size());
+            out.writeLong(compiled.stamp().lastModified());
+            out.writeLong(compiled.stamp().hash());
+            final byte[] packData = treeStructure.getPackData();
+            final byte[] data = packData != null ? packData : encode(treeStructure);
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        out.flush();
+        final Path path = file.toPath();
+        final Path tmp = path.resolveSibling(FILENAME + "." + ProcessHandle.current().pid() + ".tmp");
+        Files.write(tmp, bytes.toByteArray());
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static byte[] encode(TreeStructure treeStructure) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, treeStructure.getOriginWorld());
+        for (Vec3i vec : List.of(treeStructure.getOrigin(), treeStructure.getSapling(), treeStructure.getSize())) {
+            out.writeInt(vec.x);
+            out.writeInt(vec.y);
+            out.writeInt(vec.z);
+        }
+        final BlockData[] palette = treeStructure.getPalette();
+        final TreeStructure.Blocks blocks = treeStructure.requireBlocks();
+        out.writeInt(palette.length);
+        for (BlockData blockData : palette) {
+            writeString(out, blockData.getAsString());
+        }
+        out.writeInt(blocks.placeBlocks().length);
+        for (int it : blocks.placeBlocks()) out.writeInt(it);
+        for (short it : blocks.paletteIndex()) out.writeShort(it);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,101 @@
+package com.cavetale.trees;
+
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Immutable lookup structure for all loaded tree structures.  Built
+ * once per load and replaced as a whole whenever a structure is
+ * added.
+ */
+public final class TreeRegistry {
+    public static final TreeRegistry EMPTY = new TreeRegistry(List.of());
+    private static final String[] NO_NAMES = new String[0];
+    private final List<TreeStructure> all;
+    private final EnumMap<CustomTreeType, TreeStructure[]> typeMap = new EnumMap<>(CustomTreeType.class);
+    /** Immutable list views of the arrays in typeMap. */
+    private final EnumMap<CustomTreeType, List<TreeStructure>> typeListMap = new EnumMap<>(CustomTreeType.class);
+    private final EnumMap<CustomTreeType, Map<String, TreeStructure>> nameMap = new EnumMap<>(CustomTreeType.class);
+    /** Sorted distinct names, for completion. */
+    private final String[] names;
+    private final EnumMap<CustomTreeType, String[]> typeNames = new EnumMap<>(CustomTreeType.class);
+
+    public TreeRegistry(final List<TreeStructure> treeStructures) {
+        this.all = List.copyOf(treeStructures);
+        final EnumMap<CustomTreeType, List<TreeStructure>> lists = new EnumMap<>(CustomTreeType.class);
+        final TreeSet<String> allNames = new TreeSet<>();
+        for (TreeStructure it : all) {
+            lists.computeIfAbsent(it.getType(), t -> new ArrayList<>()).add(it);
+            // Keep the first one in case of duplicates
+            nameMap.computeIfAbsent(it.getType(), t -> new HashMap<>()).putIfAbsent(it.getName(), it);
+            allNames.add(it.getName());
+        }
+        for (CustomTreeType type : CustomTreeType.values()) {
+            final List<TreeStructure> list = lists.get(type);
+            if (list == null) continue;
+            final TreeStructure[] array = list.toArray(new TreeStructure[0]);
+            typeMap.put(type, array);
+            typeListMap.put(type, List.of(array));
+            final String[] sorted = nameMap.get(type).keySet().toArray(new String[0]);
+            Arrays.sort(sorted);
+            typeNames.put(type, sorted);
+        }
+        this.names = allNames.toArray(new String[0]);
+    }
+
+    public List<TreeStructure> getAll() {
+        return all;
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    /**
+     * Get all structures of a type.  The list is immutable and does
+     * not need to be copied.
+     */
+    public List<TreeStructure> get(CustomTreeType type) {
+        return typeListMap.getOrDefault(type, List.of());
+    }
+
+    public TreeStructure find(CustomTreeType type, String name) {
+        final Map<String, TreeStructure> map = nameMap.get(type);
+        return map != null ? map.get(name) : null;
+    }
+
+    /**
+     * Create a new registry with one more structure.
+     */
+    public TreeRegistry withAdded(TreeStructure treeStructure) {
+        final List<TreeStructure> list = new ArrayList<>(all.size() + 1);
+        list.addAll(all);
+        list.add(treeStructure);
+        return new TreeRegistry(list);
+    }
+
+    /**
+     * Complete a structure name by prefix.
+     * @param type the type, or null for all types
+     * @param prefix the prefix
+     * @return the matching names in order
+     */
+    public List<String> complete(CustomTreeType type, String prefix) {
+        final String[] sorted = type != null
+            ? typeNames.getOrDefault(type, NO_NAMES)
+            : names;
+        int index = Arrays.binarySearch(sorted, prefix);
+        if (index < 0) index = -index - 1;
+        final List<String> result = new ArrayList<>();
+        for (int i = index; i < sorted.length && sorted[i].startsWith(prefix); i += 1) {
+            result.add(sorted[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+package com.cavetale.trees;
+
+import com.cavetale.core.struct.Vec3i;
+import com.cavetale.trees.util.PackedVector;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.bukkit.Tag;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * Cost and memory report of tree structures, for /trees report.
+ * The structures are snapshot on the main thread and the rows are
+ * built on an async thread.
+ */
+final class TreeReport {
+    private TreeReport() { }
+
+    /**
+     * One structure.  Chunks, preview displays and grow ticks need
+     * the blocks and are -1 if they are not loaded.
+     * @param chunks the chunks spanned by the placed blocks in the
+     *        worst alignment and orientation
+     * @param heapBytes the estimated heap of the structure and its
+     *        variants, as if the blocks were loaded
+     * @param growTicks the ticks of growth at one turn per tick
+     */
+    record Row(String type, String name, boolean loaded, int blocks, int sizeX, int sizeY, int sizeZ,
+               int chunks, long heapBytes, int previewDisplays, int growTicks) {
+        public static final String CSV_HEADER = "type,name,loaded,blocks,size_x,size_y,size_z,chunks,heap_bytes,preview_displays,grow_ticks";
+
+        public String toCsv() {
+            return type + "," + name + "," + loaded + "," + blocks + "," + sizeX + "," + sizeY + "," + sizeZ
+                + "," + chunks + "," + heapBytes + "," + previewDisplays + "," + growTicks;
+        }
+    }
+
+    enum Sort {
+        BLOCKS(Comparator.comparingInt(Row::blocks).reversed()),
+        SIZE(Comparator.comparingLong((Row row) -> (long) row.sizeX() * row.sizeY() * row.sizeZ()).reversed()),
+        CHUNKS(Comparator.comparingInt(Row::chunks).reversed()),
+        HEAP(Comparator.comparingLong(Row::heapBytes).reversed()),
+        PREVIEW(Comparator.comparingInt(Row::previewDisplays).reversed()),
+        TICKS(Comparator.comparingInt(Row::growTicks).reversed()),
+        NAME(Comparator.comparing(Row::type).thenComparing(Row::name));
+
+        final Comparator<Row> comparator;
+
+        Sort(final Comparator<Row> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    /**
+     * Number of chunks a range of blocks spans along one axis when
+     * aligned as badly as possible.
+     */
+    static int worstChunkSpan(int width) {
+        return (width + 14) / 16 + 1;
+    }
+
+    /**
+     * The parts of one structure the report needs, taken on the main
+     * thread so the rows can be built on an async thread.  Blocks
+     * which are not loaded stay that way, so the report does not
+     * disturb the TreeDataCache.
+     * @param blocks the blocks, or null if not loaded
+     */
+    record Input(String type, String name, Vec3i size, BlockData[] palette, int blockCount,
+                 TreeStructure.Blocks blocks, long heapBytes) {
+        static Input of(TreeStructure treeStructure) {
+            final TreeStructure.Blocks blocks = treeStructure.getLoadedBlocks();
+            final long heapBytes = blocks != null
+                ? treeStructure.getRetainedBytes() + treeStructure.getVariantRetainedBytes()
+                : treeStructure.getRetainedBytes() + TreeStructure.getBlocksRetainedBytes(treeStructure.getBlockCount());
+            return new Input(treeStructure.getType().name().toLowerCase(), treeStructure.getName(),
+                             treeStructure.getSize(), treeStructure.getPalette(), treeStructure.getBlockCount(),
+                             blocks, heapBytes);
+        }
+    }
+
+    /**
+     * Snapshot the structures.  Main thread only.
+     */
+    static List<Input> createInputs(List<TreeStructure> treeStructures) {
+        final List<Input> result = new ArrayList<>(treeStructures.size());
+        for (TreeStructure it : treeStructures) {
+            result.add(Input.of(it));
+        }
+        return result;
+    }
+
+    static Row createRow(Input input, int maxPreviewDisplays, int weightPerTurn) {
+        if (input.blocks() == null) {
+            return new Row(input.type(), input.name(), false, input.blockCount(),
+                           input.size().x, input.size().y, input.size().z,
+                           -1, input.heapBytes(), -1, -1);
+        }
+        final int[] placeBlocks = input.blocks().placeBlocks();
+        final short[] paletteIndex = input.blocks().paletteIndex();
+        int ax = Integer.MAX_VALUE;
+        int az = Integer.MAX_VALUE;
+        int bx = Integer.MIN_VALUE;
+        int bz = Integer.MIN_VALUE;
+        long weight = 0L;
+        for (int i = 0; i < placeBlocks.length; i += 1) {
+            final int x = PackedVector.x(placeBlocks[i]);
+            final int z = PackedVector.z(placeBlocks[i]);
+            ax = Math.min(ax, x);
+            az = Math.min(az, z);
+            bx = Math.max(bx, x);
+            bz = Math.max(bz, z);
+            weight += Tag.LEAVES.isTagged(input.palette()[paletteIndex[i]].getMaterial()) ? 1 : 4;
+        }
+        // Rotation swaps the axes, which does not change the product
+        final int chunks = placeBlocks.length == 0
+            ? 0
+            : worstChunkSpan(bx - ax + 1) * worstChunkSpan(bz - az + 1);
+        final int previewDisplays = PreviewModel.build(placeBlocks, paletteIndex, maxPreviewDisplays).size();
+        final int growTicks = (int) ((weight + weightPerTurn - 1) / Math.max(1, weightPerTurn));
+        return new Row(input.type(), input.name(), true,
+                       placeBlocks.length,
+                       input.size().x, input.size().y, input.size().z,
+                       chunks,
+                       input.heapBytes(),
+                       previewDisplays, growTicks);
+    }
+
+    /**
+     * Build and sort the rows.  Safe to call from any thread.
+     */
+    static List<Row> createRows(List<Input> inputs, int maxPreviewDisplays, int weightPerTurn, Sort sort) {
+        final List<Row> result = new ArrayList<>(inputs.size());
+        for (Input it : inputs) {
+            result.add(createRow(it, maxPreviewDisplays, weightPerTurn));
+        }
+        result.sort(sort.comparator);
+        return result;
+    }
+}
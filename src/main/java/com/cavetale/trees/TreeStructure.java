@@ -2,20 +2,27 @@ package com.cavetale.trees;
 
 import com.cavetale.core.struct.Vec3i;
 import com.cavetale.mytems.item.tree.CustomTreeType;
+import com.cavetale.trees.util.BlockDataPool;
+import com.cavetale.trees.util.PackedVector;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
-import org.bukkit.Tag;
 import org.bukkit.block.Block;
 import org.bukkit.block.data.BlockData;
+import org.bukkit.block.structure.Mirror;
+import org.bukkit.block.structure.StructureRotation;
 import org.bukkit.entity.Player;
 import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.structure.Structure;
@@ -29,11 +36,37 @@ public final class TreeStructure {
     public static final NamespacedKey ORIGIN = NamespacedKey.fromString("trees:origin");
     public static final NamespacedKey SAPLING = NamespacedKey.fromString("trees:sapling");
     public static final int[] EMPTY = new int[0];
+    /** Estimated shallow size of one BlockData instance. */
+    static final long BLOCK_DATA_BYTES = 24L;
     protected final CustomTreeType type;
     protected final String name;
-    private Map<Vec3i, BlockData> blockDataMap;
-    private List<Vec3i> placeBlockList;
+    /** The distinct block data of this structure.  Always resident. */
+    @Setter(AccessLevel.NONE)
+    private BlockData[] palette;
+    /**
+     * The blocks, or null while they are not loaded.  See
+     * requireBlocks().
+     */
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude @ToString.Exclude
+    private volatile Blocks blocks;
+    @Setter(AccessLevel.NONE)
+    private int blockCount;
+    /**
+     * The pack cache and entry to load the blocks from, or null.
+     * Guarded by this.
+     */
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude @ToString.Exclude
+    private TreePackCache packCache;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude @ToString.Exclude
+    private TreePackCache.Entry packEntry;
     private final Vec3i size;
+    /** Lazily created variants, see getVariant(). */
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude @ToString.Exclude
+    private final TreeVariant[] variants = new TreeVariant[StructureRotation.values().length * Mirror.values().length];
     /** Origin world name, to identify duplicates. */
     protected String originWorld;
     /**  Origin to identify duplicates. */
@@ -42,6 +75,11 @@ public final class TreeStructure {
     protected Vec3i sapling;
 
     public TreeStructure(final CustomTreeType type, final String name, final Structure structure) {
+        this(type, name, structure, null);
+    }
+
+    protected TreeStructure(final CustomTreeType type, final String name, final Structure structure,
+                            final TreeStructureLoader.Timings timings) {
         this.type = type;
         this.name = name;
         BlockVector blockVector = structure.getSize();
@@ -57,10 +95,48 @@ public final class TreeStructure {
         this.sapling = intArray.length == 3
             ? vector(intArray[0], intArray[1], intArray[2])
             : Vec3i.ZERO;
-        this.blockDataMap = createBlockDataMap(structure);
-        this.placeBlockList = createPlaceBlockList(blockDataMap, sapling);
+        build(structure, timings);
     }
 
+    /**
+     * Constructor for structures restored from the compiled cache.
+     * The blocks are loaded later, see setPackSource().
+     */
+    protected TreeStructure(final CustomTreeType type, final String name, final Vec3i size,
+                            final String originWorld, final Vec3i origin, final Vec3i sapling,
+                            final BlockData[] palette, final int blockCount) {
+        this.type = type;
+        this.name = name;
+        this.size = size;
+        this.originWorld = originWorld;
+        this.origin = origin;
+        this.sapling = sapling;
+        this.palette = palette;
+        this.blockCount = blockCount;
+    }
+
+    /**
+     * Constructor for structures generated in memory, such as by the
+     * load harness.
+     * @param placeBlocks see Blocks
+     * @param paletteIndex see Blocks
+     */
+    public TreeStructure(final CustomTreeType type, final String name, final Vec3i size, final Vec3i sapling,
+                         final BlockData[] palette, final int[] placeBlocks, final short[] paletteIndex) {
+        this(type, name, size, "", Vec3i.ZERO, sapling, palette, placeBlocks.length);
+        this.blocks = new Blocks(placeBlocks, paletteIndex);
+    }
+
+    /**
+     * The loadable part of a structure.
+     * @param placeBlocks placement order as packed structure
+     *        coordinates, see PackedVector.  Logs come first, then
+     *        leaves.
+     * @param paletteIndex palette index for each entry in
+     *        placeBlocks
+     */
+    record Blocks(int[] placeBlocks, short[] paletteIndex) { }
+
     public enum PreprocessResult {
         SUCCESS,
         NO_FLOOR,
@@ -85,141 +161,317 @@ public final class TreeStructure {
                 origin.z,
             });
         // Now the tricky part: Find the sapling!
-        int tallestGroundBlock = -1;
-        for (var palette : structure.getPalettes()) {
-            for (var blockState : palette.getBlocks()) {
-                if (Materials.GROUND.contains(blockState.getType())) {
-                    if (tallestGroundBlock < blockState.getY()) {
-                        tallestGroundBlock = blockState.getY();
-                    }
-                }
-            }
+        if (!PackedVector.fits(size.x, size.y, size.z)) {
+            throw new IllegalArgumentException("Structure too large: " + type + " " + name + " " + size);
         }
-        if (tallestGroundBlock < 0) return PreprocessResult.NO_FLOOR;
-        List<Vec3i> saplingBlockList = new ArrayList<>();
+        int[] ground = new int[64];
+        int groundCount = 0;
         for (var palette : structure.getPalettes()) {
             for (var blockState : palette.getBlocks()) {
-                if (blockState.getY() == tallestGroundBlock && Materials.GROUND.contains(blockState.getType())) {
-                    saplingBlockList.add(vector(blockState.getX(), blockState.getY() + 1, blockState.getZ()));
-                }
+                if (!Materials.GROUND.contains(blockState.getType())) continue;
+                if (groundCount == ground.length) ground = Arrays.copyOf(ground, groundCount * 2);
+                ground[groundCount++] = PackedVector.pack(blockState.getX(), blockState.getY(), blockState.getZ());
             }
         }
-        if (saplingBlockList.isEmpty()) return PreprocessResult.NO_SAPLING;
-        int totalX = 0;
-        int totalZ = 0;
-        for (Vec3i it : saplingBlockList) {
-            totalX += it.x;
-            totalZ += it.z;
-        }
-        this.sapling = vector(totalX / saplingBlockList.size(),
-                              tallestGroundBlock + 1,
-                              totalZ / saplingBlockList.size());
+        if (groundCount == 0) return PreprocessResult.NO_FLOOR;
+        final Vec3i found = SaplingFinder.find(ground, groundCount);
+        if (found == null) return PreprocessResult.NO_SAPLING;
+        this.sapling = found;
         pdc.set(SAPLING, INTEGER_ARRAY, new int[] {
                 sapling.x,
                 sapling.y,
                 sapling.z,
             });
-        this.blockDataMap = createBlockDataMap(structure);
-        this.placeBlockList = createPlaceBlockList(blockDataMap, sapling);
+        build(structure, null);
         return PreprocessResult.SUCCESS;
     }
 
     public void show(Player player, Vec3i offset) {
+        final Blocks theBlocks = requireBlocks();
+        final int[] placeBlocks = theBlocks.placeBlocks();
         Map<Location, BlockData> blockChanges = new HashMap<>();
-        for (Vec3i vec : placeBlockList) {
-            BlockData blockData = blockDataMap.get(vec);
-            Vec3i at = offset.add(vec.getX() - sapling.x,
-                                  vec.getY() - sapling.y,
-                                  vec.getZ() - sapling.z);
-            blockChanges.put(at.toLocation(player.getWorld()), blockData);
+        for (int i = 0; i < placeBlocks.length; i += 1) {
+            final int packed = placeBlocks[i];
+            Vec3i at = offset.add(PackedVector.x(packed) - sapling.x,
+                                  PackedVector.y(packed) - sapling.y,
+                                  PackedVector.z(packed) - sapling.z);
+            blockChanges.put(at.toLocation(player.getWorld()), palette[theBlocks.paletteIndex()[i]]);
         }
         player.sendMultiBlockChange(blockChanges);
     }
 
-    private static Map<Vec3i, BlockData> createBlockDataMap(Structure structure) {
-        Map<Vec3i, BlockData> blockDataMap = new HashMap<>();
+    /**
+     * Build the compact block storage from the structure.  The
+     * dense grid only lives for the duration of this call.
+     * @param timings the optional loader timings to add to
+     */
+    private void build(Structure structure, TreeStructureLoader.Timings timings) {
+        if (!PackedVector.fits(size.x, size.y, size.z)) {
+            throw new IllegalArgumentException("Structure too large: " + type + " " + name + " " + size);
+        }
+        final long start = System.nanoTime();
+        final int sx = size.x;
+        final int sy = size.y;
+        final int sz = size.z;
+        final BlockData[] cells = new BlockData[sx * sy * sz];
+        final byte[] kinds = new byte[cells.length];
         for (var blockState : structure.getPalettes().get(0).getBlocks()) {
-            BlockData blockData = blockState.getBlockData();
+            final BlockData blockData = blockState.getBlockData();
             if (blockData == null || blockData.getMaterial().isAir()) continue;
-            Vec3i vec = vector(blockState.getX(), blockState.getY(), blockState.getZ());
-            blockDataMap.put(vec, blockData);
+            final int x = blockState.getX();
+            final int y = blockState.getY();
+            final int z = blockState.getZ();
+            if (x < 0 || y < 0 || z < 0 || x >= sx || y >= sy || z >= sz) continue;
+            final int index = PlaceOrder.index(sx, sz, x, y, z);
+            cells[index] = blockData;
+            kinds[index] = getPlaceKind(blockData.getMaterial());
         }
-        return blockDataMap;
-    }
-
-    private static List<Vec3i> getAllFaces() {
-        List<Vec3i> result = new ArrayList<>(8);
-        for (int y = -1; y <= 1; y += 1) {
-            for (int z = -1; z <= 1; z += 1) {
-                for (int x = -1; x <= 1; x += 1) {
-                    if (x == 0 && y == 0 && z == 0) continue;
-                    result.add(vector(x, y, z));
-                }
+        final long mapped = System.nanoTime();
+        final int[] order = PlaceOrder.compute(sx, sy, sz, kinds, sapling.x, sapling.y, sapling.z, getSeed());
+        final BlockDataPool blockDataPool = TreesPlugin.getBlockDataPool();
+        Map<BlockData, Integer> paletteMap = new HashMap<>();
+        List<BlockData> paletteList = new ArrayList<>();
+        final int[] placeBlocks = new int[order.length];
+        final short[] paletteIndex = new short[order.length];
+        for (int i = 0; i < order.length; i += 1) {
+            final int cell = order[i];
+            BlockData blockData = cells[cell];
+            Integer index = paletteMap.get(blockData);
+            if (index == null) {
+                index = paletteList.size();
+                paletteMap.put(blockData, index);
+                paletteList.add(blockDataPool.intern(blockData));
             }
+            placeBlocks[i] = PackedVector.pack(cell % sx, cell / (sx * sz), (cell / sx) % sz);
+            paletteIndex[i] = (short) (int) index;
+        }
+        synchronized (this) {
+            this.palette = paletteList.toArray(new BlockData[0]);
+            this.blocks = new Blocks(placeBlocks, paletteIndex);
+            this.blockCount = placeBlocks.length;
+            // The cache entry is outdated now
+            this.packCache = null;
+            this.packEntry = null;
+        }
+        Arrays.fill(variants, null);
+        if (timings != null) {
+            timings.map.add(mapped - start);
+            timings.order.add(System.nanoTime() - mapped);
         }
-        Collections.shuffle(result);
-        return result;
     }
 
-    private static List<Vec3i> createPlaceBlockList(Map<Vec3i, BlockData> blockDataMap, Vec3i start) {
-        List<Vec3i> blockList = new ArrayList<>();
-        Set<Vec3i> doneBlockSet = new HashSet<>();
-        // Mangrove trees are floaty!
-        for (int i = 0; i < 8 && !blockDataMap.containsKey(start); i += 1) {
-            start = start.add(0, 1, 0);
+    /**
+     * The seed of the placement order, derived from type and name.
+     */
+    public long getSeed() {
+        return PlaceOrder.seed(type.name(), name);
+    }
+
+    /**
+     * Classify a material for PlaceOrder.  Foliage goes last, see
+     * Materials.isFoliage(), ground and ignored blocks are not part
+     * of the tree.
+     */
+    private static byte getPlaceKind(Material material) {
+        if (Materials.GROUND.contains(material) || Materials.IGNORED.contains(material)) {
+            return PlaceOrder.BLOCKED;
         }
-        blockList.add(start);
-        doneBlockSet.add(start);
-        int blockIndex = 0;
-        while (blockIndex < blockList.size()) {
-            int i = blockIndex++;
-            Vec3i center = blockList.get(i);
-            List<Vec3i> faces = getAllFaces();
-            for (Vec3i nborFace : faces) {
-                Vec3i nborVec = center.add(nborFace);
-                if (doneBlockSet.contains(nborVec)) continue;
-                doneBlockSet.add(nborVec);
-                BlockData nborBlock = blockDataMap.get(nborVec);
-                if (nborBlock == null) continue;
-                Material nborMat = nborBlock.getMaterial();
-                if (nborMat.isEmpty()) continue;
-                if (Materials.GROUND.contains(nborMat)) continue;
-                if (Materials.IGNORED.contains(nborMat)) continue;
-                blockList.add(nborVec);
-            }
+        if (Materials.isFoliage(material)) {
+            return PlaceOrder.LAST;
         }
-        blockList.removeIf(v -> !blockDataMap.containsKey(v));
-        // Sort them: Logs go first
-        List<Vec3i> logs = new ArrayList<>();
-        List<Vec3i> leaves = new ArrayList<>();
-        for (Vec3i vec : blockList) {
-            BlockData blockData = blockDataMap.get(vec);
-            Material material = blockData.getMaterial();
-            if (Tag.LEAVES.isTagged(material)) {
-                leaves.add(vec);
-            } else if (Tag.LOGS.isTagged(material)) {
-                logs.add(vec);
-            } else if (Materials.VINE.contains(material)) {
-                leaves.add(vec);
-            } else {
-                logs.add(vec);
-            }
+        return PlaceOrder.FIRST;
+    }
+
+    /**
+     * Get the placement ready variant for the given rotation and
+     * mirror.  Variants are created on first use.  Main thread
+     * only.
+     */
+    public TreeVariant getVariant(StructureRotation rotation, Mirror mirror) {
+        final int index = rotation.ordinal() * Mirror.values().length + mirror.ordinal();
+        TreeVariant result = variants[index];
+        if (result == null) {
+            result = new TreeVariant(this, rotation, mirror);
+            variants[index] = result;
         }
-        List<Vec3i> result = new ArrayList<>();
-        result.addAll(logs);
-        result.addAll(leaves);
-        blockDataMap.keySet().retainAll(result);
+        touch();
         return result;
     }
 
+    /**
+     * Mark this structure as used in the TreeDataCache.  Main
+     * thread only.
+     */
+    private void touch() {
+        final TreesPlugin plugin = TreesPlugin.getInstance();
+        if (plugin != null) plugin.getTreeDataCache().touch(this);
+    }
+
+    /**
+     * Set the pack cache entry which holds the same blocks as this
+     * structure, so they can be dropped and loaded again.
+     */
+    synchronized void setPackSource(TreePackCache cache, TreePackCache.Entry entry) {
+        this.packCache = cache;
+        this.packEntry = entry;
+    }
+
+    public synchronized boolean hasPackSource() {
+        return packCache != null;
+    }
+
+    /**
+     * Get a copy of the encoded pack cache entry, or null if there
+     * is none.
+     */
+    synchronized byte[] getPackData() {
+        return packCache != null ? packCache.copyData(packEntry) : null;
+    }
+
+    public boolean isLoaded() {
+        return blocks != null;
+    }
+
+    /**
+     * Get the blocks if they are loaded, without loading them.
+     */
+    Blocks getLoadedBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Get the blocks, loading them from the pack cache if necessary.
+     * Callers which access the blocks repeatedly should hold on to
+     * the result, because the structure may be unloaded in between.
+     */
+    Blocks requireBlocks() {
+        final Blocks result = blocks;
+        if (result != null) return result;
+        final Blocks loaded = load();
+        if (Bukkit.isPrimaryThread()) touch();
+        return loaded;
+    }
+
+    /**
+     * Load the blocks from the pack cache unless they are already
+     * loaded.  Thread safe.
+     * @throws IllegalStateException if there is no pack source
+     * @throws IllegalArgumentException if the cache entry is damaged
+     */
+    synchronized Blocks load() {
+        if (blocks != null) return blocks;
+        if (packCache == null) throw new IllegalStateException("No pack source: " + type + " " + name);
+        final Blocks result = packCache.decodeBlocks(packEntry, palette.length);
+        if (result.placeBlocks().length != blockCount) {
+            throw new IllegalArgumentException("Block count mismatch: " + result.placeBlocks().length + "/" + blockCount);
+        }
+        blocks = result;
+        return result;
+    }
+
+    /**
+     * Drop the blocks and variants, provided they can be loaded
+     * again.  Plantings keep their variant.  Main thread only.
+     * @return true if anything was dropped
+     */
+    public synchronized boolean unload() {
+        if (blocks == null || packCache == null) return false;
+        blocks = null;
+        Arrays.fill(variants, null);
+        return true;
+    }
+
+    /**
+     * Placement order as packed structure coordinates, see
+     * PackedVector.  Logs come first, then leaves.
+     */
+    public int[] getPlaceBlocks() {
+        return requireBlocks().placeBlocks();
+    }
+
+    /**
+     * Palette index for each entry in getPlaceBlocks().
+     */
+    public short[] getPaletteIndex() {
+        return requireBlocks().paletteIndex();
+    }
+
     public boolean testPlaceBlockList() {
-        return placeBlockList.size() >= 8;
+        return blockCount >= 8;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Get the structure coordinates of a block in placement order.
+     */
+    public Vec3i getBlockVector(int index) {
+        final int packed = getPlaceBlocks()[index];
+        return vector(PackedVector.x(packed), PackedVector.y(packed), PackedVector.z(packed));
+    }
+
+    /**
+     * Get the block data of a block in placement order.  The
+     * instance is shared between structures, see BlockDataPool, and
+     * must not be modified.  Clone it first.
+     */
+    public BlockData getBlockData(int index) {
+        return palette[requireBlocks().paletteIndex()[index]];
     }
 
     public void place(Block blockOrigin) {
-        for (Vec3i vec : placeBlockList) {
-            BlockData blockData = blockDataMap.get(vec);
-            blockOrigin.getRelative(vec.x, vec.y, vec.z).setBlockData(blockData, false);
+        final Blocks theBlocks = requireBlocks();
+        final int[] placeBlocks = theBlocks.placeBlocks();
+        for (int i = 0; i < placeBlocks.length; i += 1) {
+            final int packed = placeBlocks[i];
+            blockOrigin.getRelative(PackedVector.x(packed), PackedVector.y(packed), PackedVector.z(packed))
+                .setBlockData(palette[theBlocks.paletteIndex()[i]], false);
+        }
+    }
+
+    /**
+     * Rough estimate of the heap retained by the block storage of
+     * this structure, assuming compressed oops.  Only the palette
+     * counts while the blocks are not loaded.
+     */
+    public long getRetainedBytes() {
+        final long paletteBytes = 16L + (4L + BLOCK_DATA_BYTES) * palette.length;
+        return blocks != null
+            ? paletteBytes + getBlocksRetainedBytes(blockCount)
+            : paletteBytes;
+    }
+
+    /**
+     * Rough estimate of the heap retained by loaded blocks.
+     */
+    static long getBlocksRetainedBytes(int blockCount) {
+        return 16L // Blocks
+            + 16L + 4L * blockCount // placeBlocks
+            + 16L + 2L * blockCount; // paletteIndex
+    }
+
+    /**
+     * Rough estimate of the heap retained by the variants created
+     * so far.
+     */
+    public long getVariantRetainedBytes() {
+        long result = 0L;
+        for (TreeVariant variant : variants) {
+            if (variant != null) result += variant.getRetainedBytes();
         }
+        return result;
+    }
+
+    /**
+     * Rough estimate of the heap the former Map and List based
+     * storage would retain for the same blocks, for comparison.
+     */
+    public long getMapRetainedBytes() {
+        final long n = blockCount;
+        final long table = Long.highestOneBit(Math.max(1L, n * 4L / 3L)) * 2L;
+        return 48L + 4L * table + (32L + BLOCK_DATA_BYTES + 24L) * n // HashMap with nodes, values and keys
+            + 40L + 4L * n; // ArrayList
     }
 }
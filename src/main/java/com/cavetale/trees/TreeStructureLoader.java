@@ -0,0 +1,327 @@
+package com.cavetale.trees;
+
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.structure.Structure;
+
+/**
+ * Load tree structure files in parallel.  Each file is one task on a
+ * bounded worker pool.  The result keeps the order of the folders,
+ * types and sorted file names, no matter which task finishes first.
+ * Structures with an up to date entry in the folder's TreePackCache
+ * are restored from there instead of being parsed.  Files which did
+ * not change since the previous load are reused without any work.
+ * In lazy mode, only the metadata and palette of cached structures
+ * are decoded, and their blocks are loaded on first use.
+ * Call from an async thread.
+ */
+final class TreeStructureLoader {
+    public static final String STRUCTURE_SUFFIX = ".dat";
+    private final Logger logger;
+    private final int threadCount;
+    private final Timings timings = new Timings();
+    private final List<String> failures = new ArrayList<>();
+    /** The files of the previous load, to be reused if unchanged. */
+    private final Map<File, Loaded> previous;
+    private final Map<File, Loaded> loadedFiles = new HashMap<>();
+    private final EnumMap<Source, Integer> sourceCounts = new EnumMap<>(Source.class);
+    private final boolean lazy;
+
+    TreeStructureLoader(final Logger logger, final Map<File, Loaded> previous, final boolean lazy) {
+        this.logger = logger;
+        this.previous = previous;
+        this.lazy = lazy;
+        this.threadCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Accumulated nanoseconds spent in each step of loading, summed
+     * over all worker threads.
+     */
+    static final class Timings {
+        final LongAdder cache = new LongAdder();
+        final LongAdder parse = new LongAdder();
+        final LongAdder map = new LongAdder();
+        final LongAdder order = new LongAdder();
+
+        @Override
+        public String toString() {
+            return String.format("cache %.3fs, parse %.3fs, map %.3fs, order %.3fs",
+                                 (double) cache.sum() / 1e9,
+                                 (double) parse.sum() / 1e9,
+                                 (double) map.sum() / 1e9,
+                                 (double) order.sum() / 1e9);
+        }
+    }
+
+    private record Job(CustomTreeType type, String name, File file) { }
+
+    /**
+     * Where a loaded structure came from.
+     */
+    enum Source {
+        /** Unchanged since the previous load and reused as is. */
+        PREVIOUS,
+        /** Restored from an up to date cache entry. */
+        CACHE,
+        /** Restored from the cache, but the file was touched. */
+        CACHE_TOUCHED,
+        /** Parsed from the structure file. */
+        PARSE;
+    }
+
+    /**
+     * The outcome of one job.
+     */
+    record Loaded(TreeStructure treeStructure, TreePackCache.Stamp stamp, Source source) { }
+
+    /**
+     * All jobs of one source folder, grouped by type.
+     */
+    private static final class FolderLoad {
+        final File folder;
+        final TreePackCache cache;
+        final List<List<Job>> groups = new ArrayList<>();
+        final List<List<Future<Loaded>>> groupFutures = new ArrayList<>();
+
+        FolderLoad(final File folder, final TreePackCache cache) {
+            this.folder = folder;
+            this.cache = cache;
+        }
+    }
+
+    public Timings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Get the files which failed to load, with a short reason each.
+     */
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Get all files loaded successfully, for the next incremental
+     * load.
+     */
+    public Map<File, Loaded> getLoadedFiles() {
+        return loadedFiles;
+    }
+
+    public int getSourceCount(Source source) {
+        return sourceCounts.getOrDefault(source, 0);
+    }
+
+    /**
+     * Get the number of files from the previous load which are
+     * gone.
+     */
+    public int getRemovedCount() {
+        int result = 0;
+        for (File file : previous.keySet()) {
+            if (!loadedFiles.containsKey(file)) result += 1;
+        }
+        return result;
+    }
+
+    public List<TreeStructure> load(List<File> folders) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "Trees-Loader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount, threadFactory);
+        final List<TreeStructure> result = new ArrayList<>();
+        try {
+            // Submit everything first so the pool stays busy across types
+            final List<FolderLoad> folderLoads = new ArrayList<>();
+            for (File folder : folders) {
+                if (!folder.isDirectory()) continue;
+                final FolderLoad folderLoad = new FolderLoad(folder, openCache(folder));
+                for (CustomTreeType type : CustomTreeType.values()) {
+                    final List<Job> jobs = listJobs(folder, type);
+                    if (jobs.isEmpty()) continue;
+                    final List<Future<Loaded>> futures = new ArrayList<>(jobs.size());
+                    for (Job job : jobs) {
+                        futures.add(executor.submit(() -> loadFile(job, folderLoad.cache)));
+                    }
+                    folderLoad.groups.add(jobs);
+                    folderLoad.groupFutures.add(futures);
+                }
+                folderLoads.add(folderLoad);
+            }
+            for (FolderLoad folderLoad : folderLoads) {
+                result.addAll(collect(folderLoad));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logger.warning("Loading interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private TreePackCache openCache(File folder) {
+        final File file = new File(folder, TreePackCache.FILENAME);
+        try {
+            return TreePackCache.open(file);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Reading cache " + file, e);
+            return TreePackCache.empty();
+        }
+    }
+
+    /**
+     * Wait for all jobs of a folder, in order, and rewrite its cache
+     * if anything changed.
+     */
+    private List<TreeStructure> collect(FolderLoad folderLoad) throws InterruptedException {
+        final List<TreeStructure> result = new ArrayList<>();
+        final List<TreePackCache.Compiled> compiledList = new ArrayList<>();
+        int upToDateCount = 0;
+        for (int g = 0; g < folderLoad.groups.size(); g += 1) {
+            final List<Job> jobs = folderLoad.groups.get(g);
+            final List<Future<Loaded>> futures = folderLoad.groupFutures.get(g);
+            int loaded = 0;
+            for (int i = 0; i < jobs.size(); i += 1) {
+                final Job job = jobs.get(i);
+                try {
+                    final Loaded it = futures.get(i).get();
+                    result.add(it.treeStructure());
+                    loadedFiles.put(job.file(), it);
+                    sourceCounts.merge(it.source(), 1, Integer::sum);
+                    compiledList.add(new TreePackCache.Compiled(it.treeStructure(), it.stamp()));
+                    if (isUpToDate(it, folderLoad.cache)) upToDateCount += 1;
+                    loaded += 1;
+                } catch (ExecutionException ee) {
+                    final Throwable cause = ee.getCause() != null ? ee.getCause() : ee;
+                    logger.log(Level.SEVERE, "loadTreeStructures " + job.file(), cause);
+                    failures.add(job.file() + ": " + cause.getMessage());
+                }
+            }
+            logger.info("Loaded " + loaded + "/" + jobs.size()
+                        + " " + jobs.get(0).type().name().toLowerCase()
+                        + " from " + folderLoad.folder);
+        }
+        if (upToDateCount != compiledList.size() || folderLoad.cache.size() != compiledList.size()) {
+            final File file = new File(folderLoad.folder, TreePackCache.FILENAME);
+            try {
+                TreePackCache.write(file, compiledList);
+                logger.info("Wrote cache " + file + ": " + compiledList.size() + " entries, "
+                            + (compiledList.size() - upToDateCount) + " compiled");
+                rebind(openCache(folderLoad.folder), compiledList);
+            } catch (IOException ioe) {
+                logger.warning("Could not write cache " + file + ": " + ioe.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Point all structures at their entry in the new cache file, so
+     * their blocks can be unloaded and loaded again from there.
+     */
+    private static void rebind(TreePackCache cache, List<TreePackCache.Compiled> compiledList) {
+        for (TreePackCache.Compiled compiled : compiledList) {
+            final TreeStructure treeStructure = compiled.treeStructure();
+            final TreePackCache.Entry entry = cache.get(treeStructure.getType(), treeStructure.getName());
+            if (entry != null && entry.stamp().equals(compiled.stamp())) {
+                treeStructure.setPackSource(cache, entry);
+            }
+        }
+    }
+
+    private static boolean isUpToDate(Loaded loaded, TreePackCache cache) {
+        switch (loaded.source()) {
+        case CACHE: return true;
+        case PREVIOUS: {
+            final TreeStructure treeStructure = loaded.treeStructure();
+            final TreePackCache.Entry entry = cache.get(treeStructure.getType(), treeStructure.getName());
+            return entry != null && entry.stamp().equals(loaded.stamp());
+        }
+        default: return false;
+        }
+    }
+
+    private static List<Job> listJobs(File folder, CustomTreeType type) {
+        final File subfolder = new File(folder, type.name().toLowerCase());
+        final File[] files = subfolder.listFiles();
+        if (files == null) return List.of();
+        Arrays.sort(files);
+        final List<Job> result = new ArrayList<>(files.length);
+        for (File file : files) {
+            final String filename = file.getName();
+            if (!filename.endsWith(STRUCTURE_SUFFIX)) continue;
+            final String name = filename.substring(0, filename.length() - STRUCTURE_SUFFIX.length());
+            result.add(new Job(type, name, file));
+        }
+        return result;
+    }
+
+    private Loaded loadFile(Job job, TreePackCache cache) throws Exception {
+        final Path path = job.file().toPath();
+        final long fileSize = Files.size(path);
+        final long lastModified = Files.getLastModifiedTime(path).toMillis();
+        final Loaded old = previous.get(job.file());
+        if (old != null && old.stamp().size() == fileSize && old.stamp().lastModified() == lastModified) {
+            return new Loaded(old.treeStructure(), old.stamp(), Source.PREVIOUS);
+        }
+        final TreePackCache.Entry entry = cache.get(job.type(), job.name());
+        if (entry != null && entry.stamp().size() == fileSize && entry.stamp().lastModified() == lastModified) {
+            final TreeStructure cached = decode(cache, entry);
+            if (cached != null) return new Loaded(cached, entry.stamp(), Source.CACHE);
+        }
+        long start = System.nanoTime();
+        final byte[] bytes = Files.readAllBytes(path);
+        final TreePackCache.Stamp stamp = new TreePackCache.Stamp(bytes.length, lastModified, TreePackCache.Stamp.hash(bytes));
+        if (entry != null && entry.stamp().hash() == stamp.hash() && entry.stamp().size() == stamp.size()) {
+            // Touched but unchanged
+            final TreeStructure cached = decode(cache, entry);
+            if (cached != null) return new Loaded(cached, stamp, Source.CACHE_TOUCHED);
+            start = System.nanoTime();
+        }
+        final Structure structure = Bukkit.getStructureManager().loadStructure(new ByteArrayInputStream(bytes));
+        timings.parse.add(System.nanoTime() - start);
+        return new Loaded(new TreeStructure(job.type(), job.name(), structure, timings), stamp, Source.PARSE);
+    }
+
+    /**
+     * Decode a cache entry, or return null if it is no longer valid.
+     */
+    private TreeStructure decode(TreePackCache cache, TreePackCache.Entry entry) {
+        final long start = System.nanoTime();
+        try {
+            return lazy
+                ? cache.decodeMetadata(entry)
+                : cache.decode(entry);
+        } catch (RuntimeException re) {
+            logger.warning("Invalid cache entry " + entry.type() + " " + entry.name() + ": " + re.getMessage());
+            return null;
+        } finally {
+            timings.cache.add(System.nanoTime() - start);
+        }
+    }
+}
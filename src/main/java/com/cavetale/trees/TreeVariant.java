@@ -0,0 +1,111 @@
+package com.cavetale.trees;
+
+import com.cavetale.core.struct.Vec3i;
+import com.cavetale.trees.util.PackedVector;
+import com.cavetale.trees.util.Transform;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Leaves;
+import org.bukkit.block.structure.Mirror;
+import org.bukkit.block.structure.StructureRotation;
+
+/**
+ * One rotated and mirrored version of a TreeStructure, ready for
+ * placement.  Offsets are relative to the sapling and already
+ * transformed, the palette holds transformed copies of the
+ * structure palette.
+ *
+ * Instances are immutable and shared between all plantings of the
+ * structure.  The BlockData in the palette must never be modified.
+ */
+@Getter
+public final class TreeVariant {
+    private final StructureRotation rotation;
+    private final Mirror mirror;
+    /** Packed offsets from the sapling in placement order. */
+    private final int[] offsets;
+    private final BlockData[] palette;
+    /** Shared with the TreeStructure. */
+    private final short[] paletteIndex;
+    /** Cached preview, see requestPreviewModel().  Main thread only. */
+    @Getter(AccessLevel.NONE)
+    private CompletableFuture<PreviewModel> previewModel;
+    @Getter(AccessLevel.NONE)
+    private int previewMaxBoxes;
+
+    protected TreeVariant(final TreeStructure treeStructure, final StructureRotation rotation, final Mirror mirror) {
+        this.rotation = rotation;
+        this.mirror = mirror;
+        final Vec3i sapling = treeStructure.getSapling();
+        final TreeStructure.Blocks blocks = treeStructure.requireBlocks();
+        final int[] placeBlocks = blocks.placeBlocks();
+        this.offsets = new int[placeBlocks.length];
+        for (int i = 0; i < placeBlocks.length; i += 1) {
+            final int packed = placeBlocks[i];
+            Vec3i vec = new Vec3i(PackedVector.x(packed) - sapling.x,
+                                  PackedVector.y(packed) - sapling.y,
+                                  PackedVector.z(packed) - sapling.z);
+            vec = Transform.rotate(vec, rotation, mirror);
+            offsets[i] = PackedVector.pack(vec.x, vec.y, vec.z);
+        }
+        final BlockData[] structurePalette = treeStructure.getPalette();
+        this.palette = new BlockData[structurePalette.length];
+        for (int i = 0; i < palette.length; i += 1) {
+            final BlockData blockData = structurePalette[i].clone();
+            if (blockData instanceof Leaves leaves) {
+                leaves.setPersistent(true);
+            }
+            Transform.rotate(blockData, rotation, mirror);
+            palette[i] = TreesPlugin.getBlockDataPool().intern(blockData);
+        }
+        this.paletteIndex = blocks.paletteIndex();
+    }
+
+    public int getBlockCount() {
+        return offsets.length;
+    }
+
+    public int getOffsetX(int index) {
+        return PackedVector.x(offsets[index]);
+    }
+
+    public int getOffsetY(int index) {
+        return PackedVector.y(offsets[index]);
+    }
+
+    public int getOffsetZ(int index) {
+        return PackedVector.z(offsets[index]);
+    }
+
+    public BlockData getBlockData(int index) {
+        return palette[paletteIndex[index]];
+    }
+
+    /**
+     * Rough estimate of the heap retained by this variant, without
+     * the shared palette index.
+     */
+    public long getRetainedBytes() {
+        return 16L + 4L * offsets.length
+            + 16L + (4L + TreeStructure.BLOCK_DATA_BYTES) * palette.length;
+    }
+
+    /**
+     * Get the miniature preview of this variant.  It is built on an
+     * async thread and cached until it is requested with a different
+     * limit.  The future completes on that thread, so poll it from
+     * the main thread.  Main thread only.
+     * @param async runs the build off the main thread
+     */
+    public CompletableFuture<PreviewModel> requestPreviewModel(int maxBoxes, Executor async) {
+        if (previewModel == null || previewMaxBoxes != maxBoxes) {
+            previewMaxBoxes = maxBoxes;
+            previewModel = CompletableFuture.supplyAsync(() -> PreviewModel.build(offsets, paletteIndex, maxBoxes),
+                                                         async);
+        }
+        return previewModel;
+    }
+}
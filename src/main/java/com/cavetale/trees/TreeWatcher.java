@@ -0,0 +1,153 @@
+package com.cavetale.trees;
+
+import com.cavetale.mytems.item.tree.CustomTreeType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watch the tree folders and their type subfolders for changes to
+ * structure files.  After the changes have settled for the debounce
+ * time, an incremental reload is scheduled on the main thread.
+ * Folders which are created later, including a root folder which
+ * did not exist at startup, are watched once they appear.
+ */
+final class TreeWatcher implements Runnable {
+    private final TreesPlugin plugin;
+    private final List<File> folders;
+    private final long debounceNanos;
+    /** The absolute paths of the root folders. */
+    private final Set<Path> roots = new HashSet<>();
+    private WatchService watchService;
+    private Thread thread;
+    /** System.nanoTime() of the last relevant event, or 0. */
+    private long lastEvent;
+
+    TreeWatcher(final TreesPlugin plugin, final List<File> folders, final long debounceMillis) {
+        this.plugin = plugin;
+        this.folders = folders;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+    }
+
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        for (File folder : folders) {
+            final Path root = folder.toPath().toAbsolutePath();
+            roots.add(root);
+            if (folder.isDirectory()) {
+                registerRootFolder(watchService, root);
+            } else if (root.getParent() != null && Files.isDirectory(root.getParent())) {
+                // Wait for the root folder to be created
+                root.getParent().register(watchService, ENTRY_CREATE);
+            }
+        }
+        thread = new Thread(this, "Trees-Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Close the watch service and wait for the thread to exit, so
+     * that no reload is scheduled after this returns.
+     */
+    public void stop() {
+        if (watchService == null) return;
+        try {
+            watchService.close();
+        } catch (IOException ioe) {
+            plugin.getLogger().log(Level.WARNING, "Closing watch service", ioe);
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000L);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        watchService = null;
+        thread = null;
+    }
+
+    private static void registerRootFolder(WatchService service, Path root) throws IOException {
+        root.register(service, ENTRY_CREATE);
+        for (CustomTreeType type : CustomTreeType.values()) {
+            registerTypeFolder(service, root.resolve(type.name().toLowerCase()));
+        }
+    }
+
+    private static void registerTypeFolder(WatchService service, Path subfolder) throws IOException {
+        if (!Files.isDirectory(subfolder)) return;
+        subfolder.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+    }
+
+    @Override
+    public void run() {
+        final WatchService service = watchService;
+        try {
+            while (true) {
+                final WatchKey key = service.poll(100L, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handle(service, key);
+                }
+                if (lastEvent != 0L && System.nanoTime() - lastEvent >= debounceNanos) {
+                    lastEvent = 0L;
+                    if (!plugin.isEnabled()) return;
+                    Bukkit.getScheduler().runTask(plugin, () -> plugin.loadTreeStructures());
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            return;
+        }
+    }
+
+    private void handle(WatchService service, WatchKey key) {
+        final Path dir = ((Path) key.watchable()).toAbsolutePath();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                lastEvent = System.nanoTime();
+                continue;
+            }
+            final Path path = dir.resolve((Path) event.context());
+            final String filename = path.getFileName().toString();
+            if (filename.endsWith(TreeStructureLoader.STRUCTURE_SUFFIX)) {
+                lastEvent = System.nanoTime();
+            } else if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                // A new root folder, or a new type folder within one.
+                // Either may already contain files.
+                try {
+                    if (roots.contains(path)) {
+                        registerRootFolder(service, path);
+                        lastEvent = System.nanoTime();
+                    } else if (roots.contains(dir) && isTypeFolderName(filename)) {
+                        registerTypeFolder(service, path);
+                        lastEvent = System.nanoTime();
+                    }
+                } catch (IOException | ClosedWatchServiceException e) {
+                    plugin.getLogger().log(Level.WARNING, "Watching " + path, e);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private static boolean isTypeFolderName(String name) {
+        for (CustomTreeType type : CustomTreeType.values()) {
+            if (type.name().toLowerCase().equals(name)) return true;
+        }
+        return false;
+    }
+}
@@ -2,26 +2,36 @@ package com.cavetale.trees;
 
 import com.cavetale.core.command.AbstractCommand;
 import com.cavetale.core.command.CommandArgCompleter;
+import com.cavetale.core.command.CommandContext;
 import com.cavetale.core.command.CommandNode;
 import com.cavetale.core.command.CommandWarn;
 import com.cavetale.core.struct.Cuboid;
 import com.cavetale.core.struct.Vec3i;
 import com.cavetale.mytems.item.axis.CuboidOutline;
 import com.cavetale.mytems.item.tree.CustomTreeType;
-import com.cavetale.trees.util.Transform;
+import com.cavetale.trees.util.BlockDataPool;
+import com.cavetale.trees.util.LongHashSet;
+import com.cavetale.trees.util.LongObjectMap;
+import com.cavetale.trees.util.VectorPool;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.IntPredicate;
 import java.util.logging.Level;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Color;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.Sign;
-import org.bukkit.block.data.BlockData;
 import org.bukkit.block.sign.Side;
 import org.bukkit.block.structure.Mirror;
 import org.bukkit.block.structure.StructureRotation;
@@ -44,46 +54,54 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
 
     @Override
     protected void onEnable() {
-        rootNode.addChild("reload").denyTabCompletion()
-            .description("Reload trees")
+        rootNode.addChild("reload").arguments("[full]")
+            .completers(CommandArgCompleter.list(List.of("full")))
+            .description("Reload changed trees")
             .senderCaller(this::reload);
         rootNode.addChild("info").denyTabCompletion()
             .description("Print tree info")
             .senderCaller(this::info);
+        rootNode.addChild("stats").denyTabCompletion()
+            .description("Print growth metrics")
+            .senderCaller(this::stats);
+        final List<String> reportTypes = new ArrayList<>();
+        reportTypes.add("all");
+        for (CustomTreeType it : CustomTreeType.values()) reportTypes.add(it.name().toLowerCase());
+        rootNode.addChild("report").arguments("[type|all] [sort] [csv]")
+            .completers(CommandArgCompleter.list(reportTypes),
+                        CommandArgCompleter.enumLowerList(TreeReport.Sort.class),
+                        CommandArgCompleter.list(List.of("csv")))
+            .description("Report cost per tree structure")
+            .senderCaller(this::report);
         rootNode.addChild("test").denyTabCompletion()
             .description("Test all trees")
             .senderCaller(this::test);
         rootNode.addChild("create").arguments("<type> <name>")
             .completers(CommandArgCompleter.enumLowerList(CustomTreeType.class),
-                        CommandArgCompleter.supplyStream(() -> plugin.treeStructureList.stream()
-                                                         .map(TreeStructure::getName)))
+                        this::completeTreeName)
             .description("Create tree structure")
             .playerCaller(this::create);
         rootNode.addChild("auto").arguments("<type> <name>")
             .completers(CommandArgCompleter.enumLowerList(CustomTreeType.class),
-                        CommandArgCompleter.supplyStream(() -> plugin.treeStructureList.stream()
-                                                         .map(TreeStructure::getName)))
+                        this::completeTreeName)
             .description("Detect a tree and await confirmation")
             .playerCaller(this::auto);
         rootNode.addChild("grid").arguments("<type> <prefix> <width-x> <height-z> <gap>")
             .description("Create trees from a grid")
             .completers(CommandArgCompleter.enumLowerList(CustomTreeType.class),
-                        CommandArgCompleter.supplyStream(() -> plugin.treeStructureList.stream()
-                                                         .map(TreeStructure::getName)),
+                        this::completeTreeName,
                         CommandArgCompleter.integer(x -> x > 0),
                         CommandArgCompleter.integer(z -> z > 0))
             .playerCaller(this::grid);
         rootNode.addChild("show").arguments("<type> <name>")
             .description("Show tree")
             .completers(CommandArgCompleter.enumLowerList(CustomTreeType.class),
-                        CommandArgCompleter.supplyStream(() -> plugin.treeStructureList.stream()
-                                                         .map(TreeStructure::getName)))
+                        this::completeTreeName)
             .playerCaller(this::show);
         rootNode.addChild("grow").arguments("<type> <name> <rotation> <mirror>")
             .description("Fake grow tree")
             .completers(CommandArgCompleter.enumLowerList(CustomTreeType.class),
-                        CommandArgCompleter.supplyStream(() -> plugin.treeStructureList.stream()
-                                                         .map(TreeStructure::getName)),
+                        this::completeTreeName,
                         CommandArgCompleter.enumLowerList(StructureRotation.class),
                         CommandArgCompleter.enumLowerList(Mirror.class))
             .playerCaller(this::grow);
@@ -96,9 +114,14 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
     }
 
     protected boolean reload(CommandSender sender, String[] args) {
-        if (args.length != 0) return false;
-        plugin.loadTreeStructures();
-        sender.sendMessage(text("Reloading tree structures...", YELLOW));
+        if (args.length > 1) return false;
+        final boolean full = args.length == 1;
+        if (full && !args[0].equals("full")) return false;
+        plugin.reloadConfig();
+        plugin.loadGrowthConfig();
+        plugin.startWatcher();
+        plugin.loadTreeStructures(full);
+        sender.sendMessage(text(full ? "Reloading all tree structures..." : "Reloading changed tree structures...", YELLOW));
         return true;
     }
 
@@ -109,14 +132,111 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
                                     + " " + it.name().toLowerCase(),
                                     YELLOW));
         }
+        final VectorPool vectorPool = TreesPlugin.getVectorPool();
+        sender.sendMessage(text("Vector pool: hits=" + vectorPool.getHits()
+                                + " misses=" + vectorPool.getMisses()
+                                + " table=" + vectorPool.getTableSize()
+                                + " fallback=" + vectorPool.getFallbackSize(),
+                                GRAY));
+        final BlockDataPool blockDataPool = TreesPlugin.getBlockDataPool();
+        sender.sendMessage(text("BlockData pool: states=" + blockDataPool.size()
+                                + " requests=" + blockDataPool.getRequests()
+                                + " deduplicated=" + blockDataPool.getDeduplicated(),
+                                GRAY));
+        final TreeDataCache treeDataCache = plugin.getTreeDataCache();
+        sender.sendMessage(text("Block data cache: lazy=" + treeDataCache.isEnabled()
+                                + " resident=" + treeDataCache.getResidentCount()
+                                + " bytes=" + (treeDataCache.getResidentBytes() / 1024L) + "/" + (treeDataCache.getMaxBytes() / 1024L) + "KiB"
+                                + " loads=" + treeDataCache.getLoads()
+                                + " evictions=" + treeDataCache.getEvictions(),
+                                GRAY));
         return true;
     }
 
+    protected boolean stats(CommandSender sender, String[] args) {
+        if (args.length != 0) return false;
+        final List<String> lines = plugin.getMetricsReport();
+        sender.sendMessage(text(lines.get(0), YELLOW));
+        for (int i = 1; i < lines.size(); i += 1) {
+            sender.sendMessage(text(lines.get(i), GRAY));
+        }
+        return true;
+    }
+
+    protected boolean report(CommandSender sender, String[] args) {
+        if (args.length > 3) return false;
+        final List<TreeStructure> treeStructures = args.length >= 1 && !args[0].equals("all")
+            ? plugin.findTreeStructures(CommandArgCompleter.requireEnum(CustomTreeType.class, args[0]))
+            : plugin.getTreeStructureList();
+        final TreeReport.Sort sort = args.length >= 2
+            ? CommandArgCompleter.requireEnum(TreeReport.Sort.class, args[1])
+            : TreeReport.Sort.BLOCKS;
+        final boolean csv = args.length >= 3 && args[2].equals("csv");
+        if (args.length >= 3 && !csv) return false;
+        final List<TreeReport.Input> inputs = TreeReport.createInputs(treeStructures);
+        final int maxPreviewDisplays = plugin.getPreviewMaxDisplays();
+        final int weightPerTurn = plugin.getGrowthScheduler().getWeightPerTurn();
+        sender.sendMessage(text("Building report of " + inputs.size() + " structures...", YELLOW));
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                final List<TreeReport.Row> rows = TreeReport.createRows(inputs, maxPreviewDisplays, weightPerTurn, sort);
+                if (csv) writeReport(rows);
+                if (!plugin.isEnabled()) return;
+                Bukkit.getScheduler().runTask(plugin, () -> sendReport(sender, rows, sort, csv));
+            });
+        return true;
+    }
+
+    private void sendReport(CommandSender sender, List<TreeReport.Row> rows, TreeReport.Sort sort, boolean csv) {
+        long totalBlocks = 0L;
+        long totalHeap = 0L;
+        for (TreeReport.Row row : rows) {
+            totalBlocks += row.blocks();
+            totalHeap += row.heapBytes();
+        }
+        sender.sendMessage(text(rows.size() + " structures, " + totalBlocks + " blocks, "
+                                + (totalHeap / 1024L) + " KiB, sorted by " + sort.name().toLowerCase(),
+                                YELLOW));
+        for (int i = 0; i < rows.size() && i < 16; i += 1) {
+            final TreeReport.Row row = rows.get(i);
+            sender.sendMessage(textOfChildren(text(row.type() + " ", AQUA),
+                                              text(row.name(), WHITE),
+                                              text(" blocks:", GRAY), text(row.blocks(), WHITE),
+                                              text(" size:", GRAY), text(row.sizeX() + "x" + row.sizeY() + "x" + row.sizeZ(), WHITE),
+                                              text(" heap:", GRAY), text((row.heapBytes() / 1024L) + "K", WHITE),
+                                              (row.loaded()
+                                               ? textOfChildren(text(" chunks:", GRAY), text(row.chunks(), WHITE),
+                                                                text(" preview:", GRAY), text(row.previewDisplays(), WHITE),
+                                                                text(" ticks:", GRAY), text(row.growTicks(), WHITE))
+                                               : text(" not loaded", DARK_GRAY))));
+        }
+        if (rows.size() > 16) {
+            sender.sendMessage(text("(" + (rows.size() - 16) + " more)", GRAY));
+        }
+        if (csv) {
+            sender.sendMessage(text("Wrote " + new File(plugin.getDataFolder(), "report.csv"), YELLOW));
+        }
+    }
+
+    /**
+     * Write the rows to report.csv.  Call from an async thread.
+     */
+    private void writeReport(List<TreeReport.Row> rows) {
+        final List<String> lines = new ArrayList<>(rows.size() + 1);
+        lines.add(TreeReport.Row.CSV_HEADER);
+        for (TreeReport.Row row : rows) lines.add(row.toCsv());
+        final File file = new File(plugin.getDataFolder(), "report.csv");
+        try {
+            Files.write(file.toPath(), lines);
+        } catch (IOException ioe) {
+            plugin.getLogger().log(Level.SEVERE, "Writing " + file, ioe);
+        }
+    }
+
     protected boolean test(CommandSender sender, String[] args) {
         if (args.length != 0) return false;
         int errorCount = 0;
         int okCount = 0;
-        for (TreeStructure it : plugin.treeStructureList) {
+        for (TreeStructure it : plugin.getTreeStructureList()) {
             if (!it.testPlaceBlockList()) {
                 sender.sendMessage(text("Too few place blocks: " + it.type + " " + it.name, YELLOW));
                 errorCount += 1;
@@ -151,7 +271,7 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
         if (!treeStructure.testPlaceBlockList()) {
             throw new CommandWarn("Too few placeable blocks: " + cuboid);
         }
-        plugin.treeStructureList.add(treeStructure);
+        plugin.addTreeStructure(treeStructure);
         if (!plugin.saveTreeStructure(treeStructure, structure)) {
             throw new CommandWarn("Saving failed. See console.");
         }
@@ -173,7 +293,7 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
             }
             final TreeStructure treeStructure = cache.getTreeStructure();
             final Structure structure = cache.getStructure();
-            plugin.treeStructureList.add(treeStructure);
+            plugin.addTreeStructure(treeStructure);
             if (!plugin.saveTreeStructure(treeStructure, structure)) {
                 throw new CommandWarn("Saving failed. See console.");
             }
@@ -201,43 +321,144 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
         if (lookAtBlock == null) {
             throw new CommandWarn("Must look at tree block!");
         }
-        final List<Block> blocks = new ArrayList<>();
-        int blocksIndex = 0;
-        final int maxBlocksSize = 8192;
-        blocks.add(lookAtBlock);
-        int ax = lookAtBlock.getX();
-        int ay = lookAtBlock.getY();
-        int az = lookAtBlock.getZ();
-        int bx = ax;
-        int by = ay;
-        int bz = az;
-        while (blocksIndex < blocks.size()) {
-            if (blocksIndex == maxBlocksSize) {
-                throw new CommandWarn("Tree size exceeds " + maxBlocksSize);
-            }
-            final Block block = blocks.get(blocksIndex++);
-            for (int dy = -1; dy <= 1; dy += 1) {
-                for (int dz = -1; dz <= 1; dz += 1) {
-                    for (int dx = -1; dx <= 1; dx += 1) {
-                        if (dx == 0 && dy == 0 && dz == 0) continue;
-                        final Block nbor = block.getRelative(dx, dy, dz);
-                        if (blocks.contains(nbor)) continue;
-                        if (nbor.isEmpty()) continue;
-                        blocks.add(nbor);
-                        final int x = nbor.getX();
-                        final int y = nbor.getY();
-                        final int z = nbor.getZ();
-                        if (x < ax) ax = x;
-                        if (y < ay) ay = y;
-                        if (z < az) az = z;
-                        if (x > bx) bx = x;
-                        if (y > by) by = y;
-                        if (z > bz) bz = z;
+        final World world = player.getWorld();
+        final SnapshotVolume volume = new SnapshotVolume(plugin, world, lookAtBlock.getX() >> 4, lookAtBlock.getZ() >> 4,
+                                                         (plugin.getAutoRadius() + 15) >> 4);
+        final FloodFill floodFill = new FloodFill(volume, plugin.getAutoMaxBlocks());
+        floodFill.setProgress(count -> Bukkit.getScheduler().runTask(plugin, () -> {
+                    player.sendActionBar(text("Scanning tree: " + count + " blocks", GRAY));
+                }));
+        player.sendActionBar(text("Scanning tree...", GRAY));
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                final long time = System.nanoTime();
+                final FloodFill.Status status = floodFill.run(lookAtBlock.getX(), lookAtBlock.getY(), lookAtBlock.getZ());
+                final long[] badBlocks = status == FloodFill.Status.COMPLETE
+                    ? floodFill.findBadBlocks()
+                    : new long[0];
+                final List<GreedyBoxes.Box> badBoxes = GreedyBoxes.merge(badBlocks);
+                final long nanos = System.nanoTime() - time;
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                        if (!player.isOnline() || !player.getWorld().equals(world)) return;
+                        try {
+                            autoFound(player, type, nameArg, floodFill, badBlocks.length, badBoxes, nanos);
+                        } catch (CommandWarn warn) {
+                            player.sendMessage(text(warn.getMessage(), RED));
+                        }
+                    });
+            });
+        return true;
+    }
+
+    /**
+     * Snapshots of the chunks around the tree, for the asynchronous
+     * flood fill.  Snapshots are taken as the fill reaches new
+     * chunks: the fill thread asks the main thread for the chunk and
+     * its neighbours within range and waits one tick, so the main
+     * thread never takes more than 9 snapshots at once.  Used by the
+     * fill thread only.
+     */
+    private static final class SnapshotVolume implements FloodFill.Volume {
+        private static final long FETCH_TIMEOUT_SECONDS = 10L;
+        private final TreesPlugin plugin;
+        private final World world;
+        private final LongObjectMap<ChunkSnapshot> snapshots = new LongObjectMap<>();
+        /** Chunks which were fetched or are out of range. */
+        private final LongHashSet requested = new LongHashSet();
+        private final int centerX;
+        private final int centerZ;
+        private final int chunkRadius;
+        private final int minY;
+        private final int maxY;
+        private ChunkSnapshot last;
+
+        SnapshotVolume(final TreesPlugin plugin, final World world, final int centerX, final int centerZ, final int chunkRadius) {
+            this.plugin = plugin;
+            this.world = world;
+            this.centerX = centerX;
+            this.centerZ = centerZ;
+            this.chunkRadius = chunkRadius;
+            this.minY = world.getMinHeight();
+            this.maxY = world.getMaxHeight();
+        }
+
+        private ChunkSnapshot getSnapshot(int x, int z) {
+            final int cx = x >> 4;
+            final int cz = z >> 4;
+            if (last != null && last.getX() == cx && last.getZ() == cz) return last;
+            final long key = Chunk.getChunkKey(cx, cz);
+            if (!requested.contains(key)) fetchAround(cx, cz);
+            final ChunkSnapshot result = snapshots.get(key);
+            if (result != null) last = result;
+            return result;
+        }
+
+        private boolean isInRange(int cx, int cz) {
+            return Math.abs(cx - centerX) <= chunkRadius && Math.abs(cz - centerZ) <= chunkRadius;
+        }
+
+        /**
+         * Snapshot a chunk and its neighbours on the main thread and
+         * wait for the result.  Chunks out of range or not loaded
+         * stay unavailable.
+         */
+        private void fetchAround(int cx, int cz) {
+            final List<int[]> fetch = new ArrayList<>();
+            for (int dz = -1; dz <= 1; dz += 1) {
+                for (int dx = -1; dx <= 1; dx += 1) {
+                    final int x = cx + dx;
+                    final int z = cz + dz;
+                    if (dx != 0 || dz != 0) {
+                        if (!isInRange(x, z) || requested.contains(Chunk.getChunkKey(x, z))) continue;
                     }
+                    requested.add(Chunk.getChunkKey(x, z));
+                    if (isInRange(x, z)) fetch.add(new int[] {x, z});
                 }
             }
+            if (fetch.isEmpty() || !plugin.isEnabled()) return;
+            final CompletableFuture<List<ChunkSnapshot>> future = new CompletableFuture<>();
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                    final List<ChunkSnapshot> list = new ArrayList<>();
+                    for (int[] it : fetch) {
+                        if (!world.isChunkLoaded(it[0], it[1])) continue;
+                        list.add(world.getChunkAt(it[0], it[1]).getChunkSnapshot(false, false, false));
+                    }
+                    future.complete(list);
+                });
+            final List<ChunkSnapshot> result;
+            try {
+                result = future.orTimeout(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS).join();
+            } catch (CompletionException ce) {
+                return;
+            }
+            for (ChunkSnapshot it : result) {
+                snapshots.put(Chunk.getChunkKey(it.getX(), it.getZ()), it);
+            }
+        }
+
+        @Override
+        public boolean isAvailable(int x, int y, int z) {
+            return y < minY || y >= maxY || getSnapshot(x, z) != null;
         }
-        final Cuboid cuboid = new Cuboid(ax, ay, az, bx, by, bz);
+
+        @Override
+        public boolean isSolid(int x, int y, int z) {
+            if (y < minY || y >= maxY) return false;
+            final ChunkSnapshot snapshot = getSnapshot(x, z);
+            return snapshot != null && !snapshot.getBlockType(x & 15, y, z & 15).isAir();
+        }
+    }
+
+    private void autoFound(Player player, CustomTreeType type, String nameArg,
+                           FloodFill floodFill, int badBlockCount, List<GreedyBoxes.Box> badBoxes, long nanos) {
+        switch (floodFill.getStatus()) {
+        case TOO_LARGE:
+            throw new CommandWarn("Tree size exceeds " + floodFill.getMaxBlocks());
+        case OUT_OF_RANGE:
+            throw new CommandWarn("Tree exceeds scan radius of " + plugin.getAutoRadius() + " blocks");
+        default: break;
+        }
+        final Cuboid cuboid = new Cuboid(floodFill.getAx(), floodFill.getAy(), floodFill.getAz(),
+                                         floodFill.getBx(), floodFill.getBy(), floodFill.getBz());
         // Create structure
         Structure structure = Bukkit.getStructureManager().createStructure();
         World w = player.getWorld();
@@ -251,11 +472,12 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
         boundingBox.spawn();
         boundingBox.glow(Color.WHITE);
         autoTreeCache.setBoundingBox(boundingBox);
-        // Find Bad Blocks
-        for (Vec3i it : cuboid.enumerate()) {
-            Block block = it.toBlock(player.getWorld());
-            if (blocks.contains(block) || block.isEmpty()) continue;
-            final CuboidOutline badBlockOutline = new CuboidOutline(player.getWorld(), new Cuboid(it.x, it.y, it.z, it.x, it.y, it.z));
+        // Bad Blocks, largest boxes first
+        final int maxOutlines = Math.min(badBoxes.size(), plugin.getAutoMaxOutlines());
+        for (int i = 0; i < maxOutlines; i += 1) {
+            final GreedyBoxes.Box box = badBoxes.get(i);
+            final CuboidOutline badBlockOutline = new CuboidOutline(player.getWorld(), new Cuboid(box.ax(), box.ay(), box.az(),
+                                                                                                 box.bx(), box.by(), box.bz()));
             badBlockOutline.showOnlyTo(player);
             badBlockOutline.spawn();
             badBlockOutline.glow(Color.RED);
@@ -295,13 +517,18 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
                                           space(),
                                           text("origin:", GRAY), text("" + treeStructure.getOrigin(), WHITE),
                                           space(),
-                                          text("blocks:", GRAY), text(blocks.size(), WHITE),
+                                          text("blocks:", GRAY), text(floodFill.getBlockCount(), WHITE),
+                                          space(),
+                                          text("scan:", GRAY), text(String.format("%.2fms", (double) nanos / 1_000_000.0), WHITE),
                                           space(),
                                           text("sapling:", GRAY), text("" + sapling, WHITE),
                                           space(),
                                           text("entities:", GRAY), text(structure.getEntityCount(), WHITE),
                                           space(),
-                                          text("bad:", GRAY), text(autoTreeCache.getBadBlocks().size(), RED)));
+                                          text("bad:", GRAY), text(badBlockCount, RED),
+                                          (badBoxes.size() > maxOutlines
+                                           ? text(" (" + (badBoxes.size() - maxOutlines) + " more boxes\u2026)", GRAY)
+                                           : text(""))));
         player.sendMessage(textOfChildren(text("[Confirm]", GREEN)
                                           .clickEvent(runCommand("/trees auto confirm"))
                                           .hoverEvent(showText(text("/trees auto confirm", GREEN))),
@@ -309,7 +536,6 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
                                           text("[Cancel]", RED)
                                           .clickEvent(runCommand("/trees auto cancel"))
                                           .hoverEvent(showText(text("/trees auto cancel", RED)))));
-        return true;
     }
 
     protected boolean grid(Player player, String[] args) {
@@ -349,7 +575,7 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
                 if (!treeStructure.testPlaceBlockList()) {
                     throw new CommandWarn("Too few placeable blocks: " + name + ", " + cuboid);
                 }
-                plugin.treeStructureList.add(treeStructure);
+                plugin.addTreeStructure(treeStructure);
                 if (!plugin.saveTreeStructure(treeStructure, structure)) {
                     throw new CommandWarn("Saving failed. See console.");
                 }
@@ -419,26 +645,28 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
         Vec3i sapling = selection.getMin().add(0, 1, 0);
         if (selection == null) throw new CommandWarn("No selection");
         player.sendMessage(text("Fake growing " + type + ", " + name + " at " + sapling, YELLOW));
-        Map<Vec3i, BlockData> blockDataMap = treeStructure.getBlockDataMap();
-        List<Vec3i> placeBlockList = treeStructure.getPlaceBlockList();
+        final TreeVariant variant = treeStructure.getVariant(rotation, mirror);
+        final int blockCount = variant.getBlockCount();
+        final Vec3i origin = selection.getMin();
         World w = player.getWorld();
         BukkitRunnable task = new BukkitRunnable() {
                 int index = 0;
                 @Override
                 public void run() {
-                    if (!player.isOnline() || !player.getWorld().equals(w) || index >= placeBlockList.size()) {
+                    if (!player.isOnline() || !player.getWorld().equals(w) || index >= blockCount) {
                         cancel();
                         player.sendMessage(text("Done growing " + type + ", " + name + ": " + index, YELLOW));
                         return;
                     }
                     for (int i = 0; i < 10; i += 1) {
-                        if (index >= placeBlockList.size()) break;
-                        Vec3i vec1 = placeBlockList.get(index++);
-                        BlockData blockData = blockDataMap.get(vec1);
-                        Transform.rotate(blockData, rotation, mirror);
-                        Vec3i vec2 = Transform.rotate(vec1.subtract(treeStructure.sapling), rotation, mirror);
+                        if (index >= blockCount) break;
+                        final int at = index++;
+                        final Location location = new Location(w,
+                                                               origin.x + variant.getOffsetX(at),
+                                                               origin.y + variant.getOffsetY(at),
+                                                               origin.z + variant.getOffsetZ(at));
                         try {
-                            player.sendBlockChange(vec2.add(selection.getMin()).toLocation(w), blockData);
+                            player.sendBlockChange(location, variant.getBlockData(at));
                         } catch (Exception e) {
                             cancel();
                             plugin.getLogger().log(Level.SEVERE, "trees grow", e);
@@ -488,6 +716,22 @@ public final class TreesCommand extends AbstractCommand<TreesPlugin> {
         return true;
     }
 
+    /**
+     * Complete a tree name.  The type is expected in the argument
+     * before the name.
+     */
+    private List<String> completeTreeName(CommandContext context, CommandNode node, String arg) {
+        CustomTreeType type = null;
+        if (context.args.length >= 2) {
+            try {
+                type = CustomTreeType.valueOf(context.args[context.args.length - 2].toUpperCase());
+            } catch (IllegalArgumentException iae) {
+                type = null;
+            }
+        }
+        return plugin.getTreeRegistry().complete(type, arg);
+    }
+
     private int requireInt(String in, IntPredicate predicate) {
         int result;
         try {
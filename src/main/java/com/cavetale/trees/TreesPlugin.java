@@ -2,19 +2,23 @@ package com.cavetale.trees;
 
 import com.cavetale.core.event.block.PlayerBlockAbilityQuery;
 import com.cavetale.core.struct.Vec3i;
+import com.cavetale.mytems.Mytems;
 import com.cavetale.mytems.item.tree.CustomTreeType;
 import com.cavetale.mytems.item.tree.TreeSeed;
+import com.cavetale.trees.util.BlockDataPool;
+import com.cavetale.trees.util.VectorPool;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
@@ -22,24 +26,49 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerItemHeldEvent;
 import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.EquipmentSlot;
+import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.structure.Structure;
-import static java.util.function.Function.identity;
+import static net.kyori.adventure.text.Component.text;
+import static net.kyori.adventure.text.format.NamedTextColor.*;
 
-public final class TreesPlugin extends JavaPlugin implements Listener {
+public final class TreesPlugin extends JavaPlugin implements Listener, PlantingContext {
     @Getter protected static TreesPlugin instance;
-    private static final String STRUCTURE_SUFFIX = ".dat";
     private final TreesCommand treesCommand = new TreesCommand(this);
-    @Getter protected List<TreeStructure> treeStructureList = List.of();
-    private static final Map<Vec3i, Vec3i> VECTOR_CACHE = new HashMap<>();
+    @Getter protected TreeRegistry treeRegistry = TreeRegistry.EMPTY;
+    private Map<File, TreeStructureLoader.Loaded> loadedFiles = Map.of();
+    private boolean loading;
+    private boolean reloadPending;
+    private TreeWatcher treeWatcher;
+    @Getter private final GrowthScheduler growthScheduler = new GrowthScheduler(getLogger());
+    @Getter private final GrowthEffects growthEffects = new GrowthEffects();
+    @Getter private final GrowthMetrics growthMetrics = new GrowthMetrics();
+    private BukkitTask metricsDumpTask;
+    @Getter private final PlantingAdmission plantingAdmission = new PlantingAdmission(this);
+    @Getter private final TreeDataCache treeDataCache = new TreeDataCache();
+    @Getter private int previewMaxDisplays = 64;
+    @Getter private TreeBlocksGrowEvent.Mode blockEventMode = TreeBlocksGrowEvent.Mode.BULK;
+    @Getter private int autoMaxBlocks = 8192;
+    @Getter private int autoRadius = 32;
+    @Getter private int autoMaxOutlines = 64;
+    private static final VectorPool VECTOR_POOL = new VectorPool();
+    private static volatile BlockDataPool blockDataPool = new BlockDataPool();
 
     @Override
     public void onEnable() {
         instance = this;
+        saveDefaultConfig();
+        reloadConfig();
+        loadGrowthConfig();
         treesCommand.enable();
         loadTreeStructures();
+        startWatcher();
+        Bukkit.getScheduler().runTaskTimer(this, this::tickGrowth, 1L, 1L);
         for (CustomTreeType it : CustomTreeType.values()) {
             if (!(it.seedMytems.getMytem() instanceof TreeSeed treeSeed)) continue;
             treeSeed.setRightClickHandler(event -> onRightClick(event, it));
@@ -49,6 +78,8 @@ public final class TreesPlugin extends JavaPlugin implements Listener {
 
     @Override
     public void onDisable() {
+        stopWatcher();
+        growthScheduler.stopAll();
         for (CustomTreeType it : CustomTreeType.values()) {
             it.setTreeModelCount(0);
             if (!(it.seedMytems.getMytem() instanceof TreeSeed treeSeed)) continue;
@@ -57,16 +88,131 @@ public final class TreesPlugin extends JavaPlugin implements Listener {
         AutoTreeCache.clearAll();
     }
 
+    protected void loadGrowthConfig() {
+        growthScheduler.setTickBudgetNanos(getConfig().getLong("growth.tick-budget-nanos", 2_000_000L));
+        growthScheduler.setWeightPerTurn(getConfig().getInt("growth.weight-per-turn", 8));
+        plantingAdmission.load(getConfig().getConfigurationSection("admission"));
+        previewMaxDisplays = Math.max(1, getConfig().getInt("preview.max-displays", 64));
+        growthEffects.setMaxSoundsPerPlayer(getConfig().getInt("effects.max-sounds-per-player", 4));
+        growthEffects.setMaxParticleBursts(getConfig().getInt("effects.max-particle-bursts", 16));
+        growthEffects.setMaxParticlesPerBurst(getConfig().getInt("effects.max-particles-per-burst", 32));
+        final String modeName = getConfig().getString("growth.block-events", "bulk");
+        try {
+            blockEventMode = TreeBlocksGrowEvent.Mode.valueOf(modeName.toUpperCase().replace("-", "_"));
+        } catch (IllegalArgumentException iae) {
+            getLogger().warning("Invalid growth.block-events: " + modeName);
+            blockEventMode = TreeBlocksGrowEvent.Mode.BULK;
+        }
+        autoMaxBlocks = Math.max(1, getConfig().getInt("auto.max-blocks", 8192));
+        autoRadius = Math.max(1, getConfig().getInt("auto.radius", 32));
+        autoMaxOutlines = Math.max(0, getConfig().getInt("auto.max-outlines", 64));
+        treeDataCache.setEnabled(getConfig().getBoolean("loading.lazy", false));
+        treeDataCache.setMaxBytes(1024L * 1024L * Math.max(1, getConfig().getInt("loading.max-memory-mb", 32)));
+        startMetricsDump();
+    }
+
+    private void tickGrowth() {
+        final boolean busy = growthScheduler.size() > 0;
+        growthScheduler.tick();
+        if (busy) {
+            growthMetrics.record(GrowthMetrics.Timer.GROW_TICK, growthScheduler.getLastTickNanos());
+        }
+        growthEffects.flush();
+    }
+
+    /**
+     * Get the lines of /trees stats: gauges, then the 1 and 5
+     * minute windows and the total since startup.
+     */
+    protected List<String> getMetricsReport() {
+        int previewDisplays = 0;
+        for (GrowthScheduler.Growable it : growthScheduler.getTasks()) {
+            if (it instanceof SeedPlantTask task) previewDisplays += task.getBlockDisplayList().size();
+        }
+        final List<String> result = new ArrayList<>();
+        result.add("active=" + growthScheduler.size()
+                   + " preview_displays=" + previewDisplays
+                   + " deferred_turns=" + growthScheduler.getDeferredTurns());
+        for (int seconds : new int[] {60, GrowthMetrics.WINDOW_SECONDS, 0}) {
+            final String prefix = seconds == 0 ? "[total] " : "[" + (seconds / 60) + "m] ";
+            for (String line : growthMetrics.report(seconds)) {
+                result.add(prefix + line);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Periodically write the metrics report to metrics.dump-file in
+     * the data folder, if set.
+     */
+    private void startMetricsDump() {
+        if (metricsDumpTask != null) {
+            metricsDumpTask.cancel();
+            metricsDumpTask = null;
+        }
+        final String fileName = getConfig().getString("metrics.dump-file", "");
+        if (fileName == null || fileName.isEmpty()) return;
+        final File file = new File(getDataFolder(), fileName);
+        final long interval = 20L * Math.max(1, getConfig().getInt("metrics.dump-interval-seconds", 60));
+        metricsDumpTask = Bukkit.getScheduler().runTaskTimer(this, () -> {
+                final List<String> lines = new ArrayList<>();
+                lines.add(Instant.now().toString());
+                lines.addAll(getMetricsReport());
+                Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+                        try {
+                            Files.write(file.toPath(), lines);
+                        } catch (IOException ioe) {
+                            getLogger().log(Level.WARNING, "Writing metrics: " + file, ioe);
+                        }
+                    });
+            }, interval, interval);
+    }
+
+    private List<File> getTreeFolders() {
+        return List.of(new File(getDataFolder(), "trees"),
+                       new File("/home/mc/public/config/Trees/trees"));
+    }
+
+    /**
+     * Incrementally reload the tree structures.  Only files which
+     * were added, changed or deleted since the previous load cause
+     * any work.
+     */
     protected void loadTreeStructures() {
+        loadTreeStructures(false);
+    }
+
+    /**
+     * Reload tree structures.  If a load is already running, another
+     * incremental one is queued.
+     * @param full true to discard all previously loaded files
+     */
+    protected void loadTreeStructures(boolean full) {
+        if (loading) {
+            reloadPending = true;
+            return;
+        }
+        loading = true;
+        final Map<File, TreeStructureLoader.Loaded> previous = full ? Map.of() : loadedFiles;
+        if (full) blockDataPool = new BlockDataPool();
+        final boolean lazy = treeDataCache.isEnabled();
         Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
                 long time = System.currentTimeMillis();
-                List<TreeStructure> loadList = new ArrayList<>();
-                loadTreeStructures(new File(getDataFolder(), "trees"), loadList);
-                loadTreeStructures(new File("/home/mc/public/config/Trees/trees"), loadList);
+                TreeStructureLoader loader = new TreeStructureLoader(getLogger(), previous, lazy);
+                List<TreeStructure> loadList = loader.load(getTreeFolders());
                 time = System.currentTimeMillis() - time;
                 double seconds = (double) time / 1000.0;
                 Bukkit.getScheduler().runTask(this, () -> {
-                        treeStructureList = loadList;
+                        loading = false;
+                        if (!isEnabled()) return;
+                        treeRegistry = new TreeRegistry(loadList);
+                        loadedFiles = loader.getLoadedFiles();
+                        final List<TreeStructure> previousList = new ArrayList<>();
+                        for (TreeStructureLoader.Loaded it : previous.values()) {
+                            previousList.add(it.treeStructure());
+                        }
+                        treeDataCache.update(previousList, loadList);
                         for (CustomTreeType it : CustomTreeType.values()) {
                             it.setTreeModelCount(0);
                         }
@@ -74,38 +220,64 @@ public final class TreesPlugin extends JavaPlugin implements Listener {
                             final int count = treeStructure.getType().getTreeModelCount();
                             treeStructure.getType().setTreeModelCount(count + 1);
                         }
-                        getLogger().info(treeStructureList.size() + " tree structures loaded in "
-                                         + String.format("%.3f", seconds) + "s");
+                        long retained = 0L;
+                        long mapRetained = 0L;
+                        int unloaded = 0;
+                        for (TreeStructure treeStructure : loadList) {
+                            retained += treeStructure.getRetainedBytes();
+                            mapRetained += treeStructure.getMapRetainedBytes();
+                            if (!treeStructure.isLoaded()) unloaded += 1;
+                        }
+                        getLogger().info(treeRegistry.size() + " tree structures loaded in "
+                                         + String.format("%.3f", seconds) + "s"
+                                         + ": " + loader.getSourceCount(TreeStructureLoader.Source.PREVIOUS) + " unchanged"
+                                         + ", " + loader.getSourceCount(TreeStructureLoader.Source.CACHE) + " cached"
+                                         + ", " + loader.getSourceCount(TreeStructureLoader.Source.CACHE_TOUCHED) + " touched"
+                                         + ", " + loader.getSourceCount(TreeStructureLoader.Source.PARSE) + " parsed"
+                                         + ", " + loader.getRemovedCount() + " removed"
+                                         + " (" + loader.getTimings() + ")"
+                                         + ", ~" + (retained / 1024L) + "KiB block storage"
+                                         + " (~" + (mapRetained / 1024L) + "KiB as maps"
+                                         + ", " + unloaded + " not loaded)"
+                                         + ", " + blockDataPool.size() + " block states"
+                                         + " (" + blockDataPool.getDeduplicated() + " deduplicated)");
+                        if (!loader.getFailures().isEmpty()) {
+                            getLogger().warning(loader.getFailures().size() + " tree structures failed to load:");
+                            for (String failure : loader.getFailures()) {
+                                getLogger().warning("- " + failure);
+                            }
+                        }
+                        if (reloadPending) {
+                            reloadPending = false;
+                            loadTreeStructures(false);
+                        }
                     });
             });
     }
 
-    private void loadTreeStructures(File folder, List<TreeStructure> list) {
-        if (!folder.isDirectory()) return;
-        final String fn = "loadTreeStructures";
-        for (CustomTreeType customTreeType : CustomTreeType.values()) {
-            File subfolder = new File(folder, customTreeType.name().toLowerCase());
-            if (!subfolder.isDirectory()) continue;
-            for (File file : subfolder.listFiles()) {
-                String filename = file.getName();
-                if (!filename.endsWith(STRUCTURE_SUFFIX)) continue;
-                filename = filename.substring(0, filename.length() - STRUCTURE_SUFFIX.length());
-                Structure structure;
-                try {
-                    structure = Bukkit.getStructureManager().loadStructure(new FileInputStream(file));
-                } catch (IOException ioe) {
-                    getLogger().log(Level.SEVERE, fn + " " + file, ioe);
-                    continue;
-                }
-                list.add(new TreeStructure(customTreeType, filename, structure));
-            }
+    protected void startWatcher() {
+        stopWatcher();
+        if (!getConfig().getBoolean("watch.enabled")) return;
+        treeWatcher = new TreeWatcher(this, getTreeFolders(), getConfig().getLong("watch.debounce-millis", 1000L));
+        try {
+            treeWatcher.start();
+        } catch (IOException ioe) {
+            getLogger().log(Level.SEVERE, "Starting tree watcher", ioe);
+            treeWatcher.stop();
+            treeWatcher = null;
         }
     }
 
+    private void stopWatcher() {
+        if (treeWatcher == null) return;
+        treeWatcher.stop();
+        treeWatcher = null;
+    }
+
     protected boolean saveTreeStructure(TreeStructure treeStructure, Structure structure) {
         File folder = new File(new File(getDataFolder(), "trees"), treeStructure.getType().name().toLowerCase());
         folder.mkdirs();
-        File file = new File(folder, treeStructure.getName() + STRUCTURE_SUFFIX);
+        File file = new File(folder, treeStructure.getName() + TreeStructureLoader.STRUCTURE_SUFFIX);
         try {
             Bukkit.getStructureManager().saveStructure(file, structure);
         } catch (IOException ioe) {
@@ -115,19 +287,42 @@ public final class TreesPlugin extends JavaPlugin implements Listener {
         return true;
     }
 
+    public List<TreeStructure> getTreeStructureList() {
+        return treeRegistry.getAll();
+    }
+
     public TreeStructure findTreeStructure(CustomTreeType type, String name) {
-        for (TreeStructure it : treeStructureList) {
-            if (it.type == type && name.equals(it.name)) return it;
-        }
-        return null;
+        return treeRegistry.find(type, name);
     }
 
+    /**
+     * Get all structures of a type.  The result is immutable.
+     */
+    @Override
     public List<TreeStructure> findTreeStructures(CustomTreeType type) {
-        List<TreeStructure> list = new ArrayList<>();
-        for (TreeStructure it : treeStructureList) {
-            if (it.type == type) list.add(it);
-        }
-        return list;
+        return treeRegistry.get(type);
+    }
+
+    @Override
+    public boolean canBuild(Player player, Block block) {
+        return PlayerBlockAbilityQuery.Action.BUILD.query(player, block);
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getScheduler().runTaskAsynchronously(this, task);
+    }
+
+    @Override
+    public void runSync(Runnable task) {
+        if (!isEnabled()) return;
+        Bukkit.getScheduler().runTask(this, task);
+    }
+
+    protected void addTreeStructure(TreeStructure treeStructure) {
+        treeRegistry = treeRegistry.withAdded(treeStructure);
+        final int count = treeStructure.getType().getTreeModelCount();
+        treeStructure.getType().setTreeModelCount(count + 1);
     }
 
     protected void onRightClick(PlayerInteractEvent event, CustomTreeType type) {
@@ -140,8 +335,21 @@ public final class TreesPlugin extends JavaPlugin implements Listener {
         Player player = event.getPlayer();
         if (player.getGameMode() == GameMode.SPECTATOR) return;
         if (!PlayerBlockAbilityQuery.Action.BUILD.query(player, block)) return;
+        final PlantingAdmission.Result admission = plantingAdmission.admit(player);
+        switch (admission) {
+        case REFUSE_PLAYER:
+            player.sendActionBar(text("You are already growing a tree", RED));
+            return;
+        case REFUSE_FULL:
+            player.sendActionBar(text("Too many trees are growing, try again later", RED));
+            return;
+        default: break;
+        }
         SeedPlantTask task = new SeedPlantTask(this, player, type, player.getWorld(), Vec3i.of(above));
         task.start();
+        if (admission == PlantingAdmission.Result.QUEUE) {
+            task.delaySprout(plantingAdmission.getSproutExtensionTicks());
+        }
         switch (player.getGameMode()) {
         case CREATIVE:
             break;
@@ -158,8 +366,12 @@ public final class TreesPlugin extends JavaPlugin implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     private void onStructureGrow(StructureGrowEvent event) {
-        Block block = event.getLocation().getBlock();
-        if (SeedPlantTask.SEED_PLANT_TASK_MAP.containsKey(block)) {
+        if (SeedPlantTask.TASK_INDEX.isEmpty()) return;
+        final Location location = event.getLocation();
+        if (SeedPlantTask.TASK_INDEX.get(location.getWorld(),
+                                         location.getBlockX(),
+                                         location.getBlockY(),
+                                         location.getBlockZ()) != null) {
             event.setCancelled(true);
         }
     }
@@ -170,7 +382,9 @@ public final class TreesPlugin extends JavaPlugin implements Listener {
      */
     @EventHandler(ignoreCancelled = true)
     private void onBlockBreak(BlockBreakEvent event) {
-        final SeedPlantTask task = SeedPlantTask.SEED_PLANT_TASK_MAP.get(event.getBlock());
+        if (SeedPlantTask.TASK_INDEX.isEmpty()) return;
+        final Block block = event.getBlock();
+        final SeedPlantTask task = SeedPlantTask.TASK_INDEX.get(block.getWorld(), block.getX(), block.getY(), block.getZ());
         if (task != null) {
             if (task.onBreakSapling(event.getPlayer())) {
                 event.setDropItems(false);
@@ -178,7 +392,48 @@ public final class TreesPlugin extends JavaPlugin implements Listener {
         }
     }
 
+    /**
+     * Prefetch the blocks of a tree type when a player holds its
+     * seed, if loading is lazy.
+     */
+    @EventHandler(ignoreCancelled = true)
+    private void onPlayerItemHeld(PlayerItemHeldEvent event) {
+        if (!treeDataCache.isEnabled()) return;
+        final ItemStack item = event.getPlayer().getInventory().getItem(event.getNewSlot());
+        if (item == null) return;
+        final Mytems mytems = Mytems.forItem(item);
+        if (mytems == null) return;
+        for (CustomTreeType type : CustomTreeType.values()) {
+            if (type.seedMytems != mytems) continue;
+            treeDataCache.prefetch(this, type, treeRegistry.get(type));
+            return;
+        }
+    }
+
+    /**
+     * Stop the plantings of a world before it goes away.
+     */
+    @EventHandler
+    private void onWorldUnload(WorldUnloadEvent event) {
+        SeedPlantTask.TASK_INDEX.unloadWorld(event.getWorld());
+    }
+
+    /**
+     * Get an interned vector.  Safe to call from any thread.
+     */
     public static Vec3i vector(int x, int y, int z) {
-        return VECTOR_CACHE.computeIfAbsent(new Vec3i(x, y, z), identity());
+        return VECTOR_POOL.get(x, y, z);
+    }
+
+    public static VectorPool getVectorPool() {
+        return VECTOR_POOL;
+    }
+
+    /**
+     * Get the pool of shared BlockData.  Safe to call from any
+     * thread.
+     */
+    public static BlockDataPool getBlockDataPool() {
+        return blockDataPool;
     }
 }
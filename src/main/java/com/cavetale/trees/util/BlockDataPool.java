@@ -0,0 +1,63 @@
+package com.cavetale.trees.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * Thread safe interning of BlockData by block state string, so
+ * identical states across all tree structures share one instance.
+ *
+ * Pooled instances are shared and must never be modified.  Clone
+ * them first.  The pool lives until the next full reload, which
+ * replaces it.
+ */
+public final class BlockDataPool {
+    private final Map<String, BlockData> map = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+
+    /**
+     * Get the pooled instance equal to the given one, adding it if
+     * there is none.
+     */
+    public BlockData intern(BlockData blockData) {
+        requests.increment();
+        final BlockData result = map.putIfAbsent(blockData.getAsString(), blockData);
+        if (result == null) return blockData;
+        if (result != blockData) deduplicated.increment();
+        return result;
+    }
+
+    /**
+     * Get the pooled instance for a block state string, creating it
+     * only if there is none.
+     */
+    public BlockData get(String blockState, Function<String, BlockData> factory) {
+        requests.increment();
+        final BlockData cached = map.get(blockState);
+        if (cached != null) {
+            deduplicated.increment();
+            return cached;
+        }
+        return map.computeIfAbsent(blockState, factory);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * The number of requests answered with an instance which was
+     * already pooled.
+     */
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+}
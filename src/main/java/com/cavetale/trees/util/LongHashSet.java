@@ -0,0 +1,100 @@
+package com.cavetale.trees.util;
+
+import java.util.Arrays;
+
+/**
+ * Minimal open addressing hash set of primitive longs.  Zero is
+ * stored out of band because it marks empty slots.  Not thread
+ * safe.
+ */
+public final class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+    private long[] keys;
+    private boolean containsZero;
+    private int size;
+    private int mask;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashSet(final int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 < expectedSize * 4) capacity *= 2;
+        this.keys = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0L) return containsZero;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            final long it = keys[i];
+            if (it == 0L) return false;
+            if (it == key) return true;
+        }
+    }
+
+    /**
+     * Add a key.
+     * @return true if the key was not yet present
+     */
+    public boolean add(long key) {
+        if (key == 0L) {
+            if (containsZero) return false;
+            containsZero = true;
+            size += 1;
+            return true;
+        }
+        if ((size + 1) * 4 > keys.length * 3) resize(keys.length * 2);
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            final long it = keys[i];
+            if (it == 0L) {
+                keys[i] = key;
+                size += 1;
+                return true;
+            }
+            if (it == key) return false;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        containsZero = false;
+        size = 0;
+    }
+
+    public long[] toArray() {
+        final long[] result = new long[size];
+        int index = 0;
+        if (containsZero) result[index++] = 0L;
+        for (long key : keys) {
+            if (key != 0L) result[index++] = key;
+        }
+        return result;
+    }
+
+    private void resize(int capacity) {
+        final long[] oldKeys = keys;
+        keys = new long[capacity];
+        mask = capacity - 1;
+        for (long key : oldKeys) {
+            if (key == 0L) continue;
+            int i = hash(key) & mask;
+            while (keys[i] != 0L) i = (i + 1) & mask;
+            keys[i] = key;
+        }
+    }
+}
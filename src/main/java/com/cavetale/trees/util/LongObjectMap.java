@@ -0,0 +1,119 @@
+package com.cavetale.trees.util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Minimal open addressing hash map from primitive long keys to
+ * objects.  Lookups do not allocate.  Not thread safe.
+ */
+public final class LongObjectMap<V> {
+    private static final int MIN_CAPACITY = 16;
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    public LongObjectMap() {
+        this.keys = new long[MIN_CAPACITY];
+        this.values = new Object[MIN_CAPACITY];
+        this.mask = MIN_CAPACITY - 1;
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            final Object value = values[i];
+            if (value == null) return null;
+            if (keys[i] == key) return (V) value;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Put a value.  Null values are not allowed.
+     * @return the previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new NullPointerException("value");
+        if ((size + 1) * 4 > values.length * 3) resize(values.length * 2);
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            final Object old = values[i];
+            if (old == null) {
+                keys[i] = key;
+                values[i] = value;
+                size += 1;
+                return null;
+            }
+            if (keys[i] == key) {
+                values[i] = value;
+                return (V) old;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = hash(key) & mask;
+        for (;; i = (i + 1) & mask) {
+            if (values[i] == null) return null;
+            if (keys[i] == key) break;
+        }
+        final V result = (V) values[i];
+        // Shift following entries back to close the gap
+        int gap = i;
+        for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            final int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        size -= 1;
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> consumer) {
+        for (Object value : values.clone()) {
+            if (value != null) consumer.accept((V) value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldValues.length; i += 1) {
+            if (oldValues[i] != null) put(oldKeys[i], (V) oldValues[i]);
+        }
+    }
+}
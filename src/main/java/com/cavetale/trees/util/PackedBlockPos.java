@@ -0,0 +1,28 @@
+package com.cavetale.trees.util;
+
+/**
+ * Pack block coordinates into one long like a vanilla BlockPos: 26
+ * bits x, 26 bits z, 12 bits y.  Y occupies the lowest bits,
+ * followed by Z, then X.
+ */
+public final class PackedBlockPos {
+    private PackedBlockPos() { }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38)
+            | ((long) (z & 0x3FFFFFF) << 12)
+            | (long) (y & 0xFFF);
+    }
+
+    public static int x(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int y(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public static int z(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+}
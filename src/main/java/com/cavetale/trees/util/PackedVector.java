@@ -0,0 +1,41 @@
+package com.cavetale.trees.util;
+
+/**
+ * Pack three small signed coordinates into one int, 10 bits each.
+ * Every coordinate must be within [-512, 511].  X occupies the
+ * lowest bits, followed by Z, then Y.
+ */
+public final class PackedVector {
+    public static final int BITS = 10;
+    public static final int MIN = -(1 << (BITS - 1));
+    public static final int MAX = (1 << (BITS - 1)) - 1;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private PackedVector() { }
+
+    public static int pack(int x, int y, int z) {
+        return (x & MASK)
+            | ((z & MASK) << BITS)
+            | ((y & MASK) << (2 * BITS));
+    }
+
+    public static int x(int packed) {
+        return (packed << (32 - BITS)) >> (32 - BITS);
+    }
+
+    public static int z(int packed) {
+        return (packed << (32 - 2 * BITS)) >> (32 - BITS);
+    }
+
+    public static int y(int packed) {
+        return (packed << (32 - 3 * BITS)) >> (32 - BITS);
+    }
+
+    public static boolean fits(int value) {
+        return value >= MIN && value <= MAX;
+    }
+
+    public static boolean fits(int x, int y, int z) {
+        return fits(x) && fits(y) && fits(z);
+    }
+}
@@ -0,0 +1,96 @@
+package com.cavetale.trees.util;
+
+import com.cavetale.core.struct.Vec3i;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe interning of Vec3i instances.
+ *
+ * Coordinates within the range of sapling offsets, plus or minus 32
+ * on each axis, are kept in a table of y slices.  Slices are
+ * allocated on first use and filled without locks.  Anything
+ * else goes to a concurrent map of bounded size.  Once the map is
+ * full, vectors outside the table are no longer interned but
+ * returned as new instances, which is fine because Vec3i compares
+ * by value.
+ */
+public final class VectorPool {
+    public static final int MIN = -32;
+    public static final int MAX = 31;
+    private static final int SPAN = MAX - MIN + 1;
+    public static final int DEFAULT_FALLBACK_CAPACITY = 4096;
+    /** One slice of SPAN * SPAN vectors per y level, or null. */
+    private final AtomicReferenceArray<AtomicReferenceArray<Vec3i>> slices = new AtomicReferenceArray<>(SPAN);
+    private final Map<Vec3i, Vec3i> fallback = new ConcurrentHashMap<>();
+    private final int fallbackCapacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public VectorPool(final int fallbackCapacity) {
+        this.fallbackCapacity = fallbackCapacity;
+    }
+
+    public VectorPool() {
+        this(DEFAULT_FALLBACK_CAPACITY);
+    }
+
+    public Vec3i get(int x, int y, int z) {
+        if (x >= MIN && x <= MAX && z >= MIN && z <= MAX && y >= MIN && y <= MAX) {
+            final AtomicReferenceArray<Vec3i> table = getSlice(y - MIN);
+            final int index = (z - MIN) * SPAN + (x - MIN);
+            final Vec3i cached = table.get(index);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            misses.increment();
+            final Vec3i result = new Vec3i(x, y, z);
+            final Vec3i witness = table.compareAndExchange(index, null, result);
+            return witness != null ? witness : result;
+        }
+        final Vec3i key = new Vec3i(x, y, z);
+        final Vec3i cached = fallback.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        if (fallback.size() >= fallbackCapacity) return key;
+        final Vec3i old = fallback.putIfAbsent(key, key);
+        return old != null ? old : key;
+    }
+
+    private AtomicReferenceArray<Vec3i> getSlice(int index) {
+        final AtomicReferenceArray<Vec3i> slice = slices.get(index);
+        if (slice != null) return slice;
+        final AtomicReferenceArray<Vec3i> result = new AtomicReferenceArray<>(SPAN * SPAN);
+        final AtomicReferenceArray<Vec3i> witness = slices.compareAndExchange(index, null, result);
+        return witness != null ? witness : result;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getFallbackSize() {
+        return fallback.size();
+    }
+
+    /**
+     * Number of table slots allocated so far.
+     */
+    public int getTableSize() {
+        int result = 0;
+        for (int i = 0; i < SPAN; i += 1) {
+            if (slices.get(i) != null) result += SPAN * SPAN;
+        }
+        return result;
+    }
+}
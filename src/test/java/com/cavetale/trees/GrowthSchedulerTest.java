@@ -0,0 +1,63 @@
+package com.cavetale.trees;
+
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+final class GrowthSchedulerTest {
+    private static final class TestTask implements GrowthScheduler.Growable {
+        private final boolean throwing;
+        private int ticks;
+        private int grown;
+        private boolean stopped;
+
+        TestTask(final boolean throwing) {
+            this.throwing = throwing;
+        }
+
+        @Override
+        public void tick() {
+            ticks += 1;
+            if (throwing) throw new IllegalStateException("broken");
+        }
+
+        @Override
+        public boolean isGrowing() {
+            return !stopped;
+        }
+
+        @Override
+        public void grow(int weight) {
+            grown += weight;
+        }
+
+        @Override
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+
+    @Test
+    void throwingTaskIsStoppedAndOthersKeepGrowing() {
+        final GrowthScheduler scheduler = new GrowthScheduler(Logger.getLogger("GrowthSchedulerTest"), () -> 0L);
+        final TestTask broken = new TestTask(true);
+        final TestTask healthy = new TestTask(false);
+        scheduler.add(broken);
+        scheduler.add(healthy);
+        for (int i = 0; i < 3; i += 1) {
+            scheduler.tick();
+        }
+        assertTrue(broken.isStopped());
+        assertEquals(1, broken.ticks);
+        assertEquals(0, broken.grown);
+        assertEquals(1, scheduler.size());
+        assertFalse(healthy.isStopped());
+        assertEquals(3, healthy.ticks);
+        assertEquals(3 * scheduler.getWeightPerTurn(), healthy.grown);
+    }
+}
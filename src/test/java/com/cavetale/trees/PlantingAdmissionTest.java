@@ -0,0 +1,59 @@
+package com.cavetale.trees;
+
+import java.util.UUID;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+final class PlantingAdmissionTest {
+    private static PlantingAdmission createAdmission(int maxGrowingPerWorld, boolean overloaded) {
+        final PlantingAdmission admission = new PlantingAdmission(null, () -> overloaded);
+        final MemoryConfiguration config = new MemoryConfiguration();
+        config.set("max-growing-per-world", maxGrowingPerWorld);
+        admission.load(config);
+        return admission;
+    }
+
+    @Test
+    void sameTickAdmitsOnlyTheCap() {
+        final PlantingAdmission admission = createAdmission(3, false);
+        final UUID world = UUID.randomUUID();
+        int admitted = 0;
+        for (int i = 0; i < 10; i += 1) {
+            if (admission.tryStartGrowing(world)) admitted += 1;
+        }
+        assertEquals(3, admitted);
+        assertEquals(3, admission.getGrowingCount(world));
+    }
+
+    @Test
+    void worldsHaveSeparateSlots() {
+        final PlantingAdmission admission = createAdmission(1, false);
+        final UUID world1 = UUID.randomUUID();
+        final UUID world2 = UUID.randomUUID();
+        assertTrue(admission.tryStartGrowing(world1));
+        assertFalse(admission.tryStartGrowing(world1));
+        assertTrue(admission.tryStartGrowing(world2));
+    }
+
+    @Test
+    void stoppingFreesASlot() {
+        final PlantingAdmission admission = createAdmission(2, false);
+        final UUID world = UUID.randomUUID();
+        assertTrue(admission.tryStartGrowing(world));
+        assertTrue(admission.tryStartGrowing(world));
+        assertFalse(admission.tryStartGrowing(world));
+        admission.stopGrowing(world);
+        assertEquals(1, admission.getGrowingCount(world));
+        assertTrue(admission.tryStartGrowing(world));
+        admission.stopGrowing(world);
+        admission.stopGrowing(world);
+        assertEquals(0, admission.getGrowingCount(world));
+    }
+
+    @Test
+    void overloadAdmitsNone() {
+        final PlantingAdmission admission = createAdmission(8, true);
+        assertFalse(admission.tryStartGrowing(UUID.randomUUID()));
+    }
+}